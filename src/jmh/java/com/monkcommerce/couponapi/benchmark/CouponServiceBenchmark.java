@@ -0,0 +1,97 @@
+package com.monkcommerce.couponapi.benchmark;
+
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
+import com.monkcommerce.couponapi.dto.ApplyCouponResponse;
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.metrics.CouponMetrics;
+import com.monkcommerce.couponapi.service.ApplicableCouponCache;
+import com.monkcommerce.couponapi.service.CouponService;
+import com.monkcommerce.couponapi.service.CouponStackingSolver;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the evaluation and apply paths over synthetic catalogs. The default
+ * {@code jmh.args} in the {@code benchmark} profile add the GC profiler, so every result also
+ * reports {@code gc.alloc.rate.norm} (bytes allocated per operation).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CouponServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int catalogSize;
+
+    /** Relative cartWise:productWise:bxgy weights. */
+    @Param({"1:1:1", "1:1:8"})
+    public String mix;
+
+    @Param({"1", "50", "500"})
+    public int cartLines;
+
+    @Param({"false", "true"})
+    public boolean fixedPoint;
+
+    private CouponService service;
+    private CouponStackingSolver stackingSolver;
+    private CartDto cart;
+    private Long bxGyId;
+    private Long firstApplicableId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        cart = SyntheticCatalog.cart(cartLines, 42L);
+        List<Coupon> coupons = new ArrayList<>(SyntheticCatalog.coupons(catalogSize, mix, 7L));
+        bxGyId = (long) catalogSize + 1;
+        coupons.add(SyntheticCatalog.matchingBxGy(bxGyId, cart));
+        CouponCatalog catalog = new CouponCatalog(SyntheticCatalog.repository(coupons), TransactionOperations.withoutTransaction(),
+                Clock.systemDefaultZone(), CouponMetrics.noop());
+        service = new CouponService(null, null, catalog, null, CouponMetrics.noop(), ApplicableCouponCache.disabled(), null, fixedPoint);
+        stackingSolver = new CouponStackingSolver(service, catalog, 5, 50);
+        List<Map<String, Object>> applicable = service.applicableCoupons(cart);
+        firstApplicableId = (Long) applicable.get(0).get("coupon_id");
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> applicableCoupons() {
+        return service.applicableCoupons(cart);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> bestCoupon() {
+        return service.bestCoupons(cart, 1);
+    }
+
+    @Benchmark
+    public ApplyCouponResponse applyCoupon() {
+        return service.applyCoupon(firstApplicableId, cart);
+    }
+
+    /** The BxGy apply path; tracked separately since it is the most expensive per cart line. */
+    @Benchmark
+    public ApplyCouponResponse applyBxGy() {
+        return service.applyCoupon(bxGyId, cart);
+    }
+
+    @Benchmark
+    public Map<String, Object> bestCombination() {
+        return stackingSolver.bestCombination(cart, null);
+    }
+
+    @Benchmark
+    public BigDecimal cartTotal() {
+        return service.cartTotal(cart);
+    }
+}
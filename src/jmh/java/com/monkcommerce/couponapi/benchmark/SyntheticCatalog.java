@@ -0,0 +1,127 @@
+package com.monkcommerce.couponapi.benchmark;
+
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.repository.CouponRepository;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Deterministic coupon catalogs and carts for benchmarks, plus a repository stand-in that serves
+ * them without a database.
+ */
+public final class SyntheticCatalog {
+
+    public static final int PRODUCT_RANGE = 5_000;
+
+    private SyntheticCatalog() { }
+
+    /**
+     * @param mix relative weights as {@code "cartWise:productWise:bxgy"}, e.g. {@code "1:1:1"}
+     */
+    public static List<Coupon> coupons(int size, String mix, long seed) {
+        String[] parts = mix.split(":");
+        int cartWise = Integer.parseInt(parts[0]);
+        int productWise = Integer.parseInt(parts[1]);
+        int bxgy = Integer.parseInt(parts[2]);
+        int weights = cartWise + productWise + bxgy;
+        Random random = new Random(seed);
+        List<Coupon> coupons = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            int pick = random.nextInt(weights);
+            CouponDtos.Details d = new CouponDtos.Details();
+            CouponType type;
+            if (pick < cartWise) {
+                type = CouponType.CART_WISE;
+                d.setThreshold(BigDecimal.valueOf(random.nextInt(200_000), 2));
+                d.setDiscount(BigDecimal.valueOf(1 + random.nextInt(30)));
+            } else if (pick < cartWise + productWise) {
+                type = CouponType.PRODUCT_WISE;
+                d.setProduct_id(product(random));
+                d.setDiscount(BigDecimal.valueOf(1 + random.nextInt(50)));
+            } else {
+                type = CouponType.BXGY;
+                d.setBuy_products(buyGets(random, 1 + random.nextInt(2)));
+                d.setGet_products(buyGets(random, 1));
+                d.setRepetition_limit(1 + random.nextInt(3));
+            }
+            coupons.add(coupon((long) i, type, d));
+        }
+        return coupons;
+    }
+
+    public static CartDto cart(int lines, long seed) {
+        Random random = new Random(seed);
+        List<CartDto.CartItemDto> items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            CartDto.CartItemDto item = new CartDto.CartItemDto();
+            item.setProduct_id(product(random));
+            item.setQuantity(1 + random.nextInt(5));
+            item.setPrice(BigDecimal.valueOf(100 + random.nextInt(50_000), 2));
+            items.add(item);
+        }
+        CartDto cart = new CartDto();
+        cart.setItems(items);
+        return cart;
+    }
+
+    /** A BxGy coupon guaranteed to apply to {@code cart}: buy one of each of its first lines, get the last. */
+    public static Coupon matchingBxGy(long id, CartDto cart) {
+        List<CartDto.CartItemDto> items = cart.getItems();
+        List<CouponDtos.BuyGet> buy = new ArrayList<>();
+        for (int i = 0; i < Math.min(3, items.size()); i++) buy.add(buyGet(items.get(i).getProduct_id(), 1));
+        CouponDtos.Details d = new CouponDtos.Details();
+        d.setBuy_products(buy);
+        d.setGet_products(List.of(buyGet(items.get(items.size() - 1).getProduct_id(), 1)));
+        d.setRepetition_limit(3);
+        return coupon(id, CouponType.BXGY, d);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static CouponRepository repository(List<Coupon> coupons) {
+        return (CouponRepository) Proxy.newProxyInstance(
+                CouponRepository.class.getClassLoader(),
+                new Class<?>[]{CouponRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAll" -> coupons;
+                    case "findById" -> coupons.stream().filter(c -> c.getId().equals(args[0])).findFirst();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "SyntheticCouponRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Coupon coupon(Long id, CouponType type, CouponDtos.Details d) {
+        Coupon c = new Coupon();
+        c.setId(id);
+        c.setName(type + " " + id);
+        c.setType(type);
+        c.setDetails(d);
+        return c;
+    }
+
+    private static List<CouponDtos.BuyGet> buyGets(Random random, int n) {
+        List<CouponDtos.BuyGet> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) list.add(buyGet(product(random), 1 + random.nextInt(3)));
+        return list;
+    }
+
+    private static CouponDtos.BuyGet buyGet(long productId, int quantity) {
+        CouponDtos.BuyGet bg = new CouponDtos.BuyGet();
+        bg.setProduct_id(productId);
+        bg.setQuantity(quantity);
+        return bg;
+    }
+
+    private static long product(Random random) {
+        return 1 + random.nextInt(PRODUCT_RANGE);
+    }
+}
@@ -0,0 +1,365 @@
+package com.monkcommerce.couponapi.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.monkcommerce.couponapi.CouponApiApplication;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.service.CouponService;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Starts the application once per execution mode, seeds a catalog, and drives a mix of
+ * {@code POST /api/applicable-coupons}, {@code POST /api/apply-coupon/{id}} and
+ * {@code GET /api/coupons/{id}} (a blocking JPA read) with a fixed number of closed-loop clients.
+ * Latency is recorded per operation in HdrHistograms; throughput and p50/p99/p99.9/max are printed
+ * and written as JSON to {@code loadtest.report}.
+ *
+ * <p>Modes: {@code platform} is the default Tomcat pool; {@code virtual} enables virtual threads and
+ * async evaluation and is skipped below Java 21. Settings are system properties, e.g.
+ * {@code mvn -Ploadtest test-compile exec:exec -Dloadtest.args="-Dloadtest.concurrency=400"}:
+ * <ul>
+ *   <li>{@code loadtest.mix}: operation weights, default {@code applicable=70,apply=20,get=10};</li>
+ *   <li>{@code loadtest.cart-lines}: lines per cart, uniform in {@code min-max}, default {@code 1-10};</li>
+ *   <li>{@code loadtest.products} and {@code loadtest.product-skew}: product ids are drawn from
+ *       1..products with Zipf exponent skew (0 is uniform), so hot products can be simulated;</li>
+ *   <li>{@code loadtest.app.<property>}: passed to the application, e.g.
+ *       {@code -Dloadtest.app.spring.datasource.url=jdbc:h2:file:./target/lt;MODE=LEGACY} to compare
+ *       another database against the in-memory H2 default;</li>
+ *   <li>{@code loadtest.label}: a name for the run, copied into the report.</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 200);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmup", 5);
+    private static final int COUPONS = Integer.getInteger("loadtest.coupons", 1_000);
+    private static final int PRODUCTS = Integer.getInteger("loadtest.products", 100);
+    private static final double PRODUCT_SKEW = Double.parseDouble(System.getProperty("loadtest.product-skew", "0"));
+    private static final String CART_LINES = System.getProperty("loadtest.cart-lines", "1-10");
+    private static final String MIX = System.getProperty("loadtest.mix", "applicable=70,apply=20,get=10");
+    private static final String REPORT = System.getProperty("loadtest.report", "target/loadtest-report.json");
+    private static final String LABEL = System.getProperty("loadtest.label", "default");
+    // Small platform pool so the difference shows at moderate client counts.
+    private static final int TOMCAT_THREADS = Integer.getInteger("loadtest.tomcat-threads", 50);
+    private static final List<String> MODES = List.of(System.getProperty("loadtest.modes", "platform,virtual").split(","));
+    private static final String APP_PREFIX = "loadtest.app.";
+    // Anything slower is recorded as this; 3 significant digits keeps each histogram small.
+    private static final long MAX_TRACKED_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    enum Operation { APPLICABLE, APPLY, GET }
+
+    public static void main(String[] args) throws Exception {
+        Workload workload = Workload.fromProperties();
+        List<Map<String, Object>> modes = new ArrayList<>();
+        List<String> table = new ArrayList<>();
+        for (String mode : MODES) {
+            boolean virtual = mode.equals("virtual");
+            if (virtual && Runtime.version().feature() < 21) {
+                table.add(String.format("%-9s skipped: needs Java 21+, running %s", mode, Runtime.version()));
+                continue;
+            }
+            Map<String, Object> result = run(mode, virtual, workload);
+            modes.add(result);
+            table.addAll(rows(result));
+        }
+        System.out.println();
+        System.out.printf("%-9s %-10s %10s %9s %9s %9s %9s %8s%n", "mode", "operation", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+        table.forEach(System.out::println);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("label", LABEL);
+        report.put("started_at", Instant.now().toString());
+        report.put("java", Runtime.version().toString());
+        report.put("cpus", Runtime.getRuntime().availableProcessors());
+        report.put("concurrency", CONCURRENCY);
+        report.put("duration_seconds", DURATION_SECONDS);
+        report.put("warmup_seconds", WARMUP_SECONDS);
+        report.put("coupons", COUPONS);
+        report.put("mix", MIX);
+        report.put("cart_lines", CART_LINES);
+        report.put("products", PRODUCTS);
+        report.put("product_skew", PRODUCT_SKEW);
+        report.put("app_properties", appProperties());
+        report.put("modes", modes);
+        File file = new File(REPORT);
+        if (file.getParentFile() != null) file.getParentFile().mkdirs();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+        System.out.println("Report written to " + file.getAbsolutePath());
+    }
+
+    private static Map<String, String> appProperties() {
+        Map<String, String> props = new TreeMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(APP_PREFIX)) props.put(name.substring(APP_PREFIX.length()), System.getProperty(name));
+        }
+        return props;
+    }
+
+    private static Map<String, Object> run(String mode, boolean virtual, Workload workload) throws Exception {
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put("server.port", "0");
+        props.put("spring.datasource.url", "jdbc:h2:mem:loadtest-" + mode + ";DB_CLOSE_DELAY=-1;MODE=LEGACY");
+        props.put("server.tomcat.threads.max", String.valueOf(TOMCAT_THREADS));
+        props.put("spring.threads.virtual.enabled", String.valueOf(virtual));
+        props.put("coupon.evaluation.async", String.valueOf(virtual));
+        props.put("logging.level.root", "WARN");
+        props.putAll(appProperties());
+        // Command-line arguments, so they win over application.yml.
+        String[] args = props.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        ConfigurableApplicationContext ctx = new SpringApplicationBuilder(CouponApiApplication.class).run(args);
+        try {
+            int port = Integer.parseInt(ctx.getEnvironment().getProperty("local.server.port"));
+            List<Long> ids = seed(ctx.getBean(CouponService.class), workload);
+            Client client = new Client("http://localhost:" + port, ids, workload);
+            drive(client, WARMUP_SECONDS);
+            EnumMap<Operation, Recorded> recorded = drive(client, DURATION_SECONDS);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("mode", mode);
+            result.put("datasource", props.get("spring.datasource.url"));
+            long total = recorded.values().stream().mapToLong(r -> r.histogram().getTotalCount()).sum();
+            result.put("throughput_rps", total / (double) DURATION_SECONDS);
+            Map<String, Object> operations = new LinkedHashMap<>();
+            recorded.forEach((op, r) -> operations.put(op.name().toLowerCase(), r.toMap()));
+            result.put("operations", operations);
+            return result;
+        } finally {
+            ctx.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> rows(Map<String, Object> result) {
+        List<String> rows = new ArrayList<>();
+        ((Map<String, Map<String, Object>>) result.get("operations")).forEach((op, m) -> rows.add(String.format(
+                "%-9s %-10s %10.1f %9.2f %9.2f %9.2f %9.2f %8d", result.get("mode"), op,
+                m.get("throughput_rps"), m.get("p50_ms"), m.get("p99_ms"), m.get("p999_ms"), m.get("max_ms"), m.get("errors"))));
+        return rows;
+    }
+
+    private static List<Long> seed(CouponService service, Workload workload) {
+        Random random = new Random(1);
+        List<Long> ids = new ArrayList<>(COUPONS);
+        for (int i = 0; i < COUPONS; i++) {
+            CouponDtos.CreateCouponRequest req = new CouponDtos.CreateCouponRequest();
+            CouponDtos.Details d = new CouponDtos.Details();
+            switch (i % 3) {
+                case 0 -> {
+                    req.setType(CouponType.CART_WISE);
+                    d.setThreshold(BigDecimal.valueOf(random.nextInt(500)));
+                    d.setDiscount(BigDecimal.valueOf(1 + random.nextInt(30)));
+                }
+                case 1 -> {
+                    req.setType(CouponType.PRODUCT_WISE);
+                    d.setProduct_id(workload.product(random));
+                    d.setDiscount(BigDecimal.valueOf(1 + random.nextInt(30)));
+                }
+                default -> {
+                    req.setType(CouponType.BXGY);
+                    d.setBuy_products(List.of(buyGet(workload.product(random), 1 + random.nextInt(3))));
+                    d.setGet_products(List.of(buyGet(workload.product(random), 1)));
+                    d.setRepetition_limit(1 + random.nextInt(3));
+                }
+            }
+            req.setName("load " + i);
+            req.setDetails(d);
+            ids.add(service.create(req).getId());
+        }
+        return ids;
+    }
+
+    private static CouponDtos.BuyGet buyGet(long productId, int quantity) {
+        CouponDtos.BuyGet bg = new CouponDtos.BuyGet();
+        bg.setProduct_id(productId);
+        bg.setQuantity(quantity);
+        return bg;
+    }
+
+    private static EnumMap<Operation, Recorded> drive(Client client, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ConcurrentLinkedQueue<EnumMap<Operation, Recorded>> perClient = new ConcurrentLinkedQueue<>();
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        for (int c = 0; c < CONCURRENCY; c++) {
+            long seed = c;
+            clients.submit(() -> {
+                Random random = new Random(seed);
+                EnumMap<Operation, Recorded> mine = Recorded.perOperation();
+                while (System.nanoTime() < deadline) {
+                    Operation op = client.workload.operation(random);
+                    long start = System.nanoTime();
+                    boolean ok = client.call(op, random);
+                    mine.get(op).record(System.nanoTime() - start, ok);
+                }
+                perClient.add(mine);
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        EnumMap<Operation, Recorded> merged = Recorded.perOperation();
+        for (EnumMap<Operation, Recorded> mine : perClient) mine.forEach((op, r) -> merged.get(op).add(r));
+        return merged;
+    }
+
+    /** Latencies of one operation; one instance per client thread, merged at the end. */
+    private static final class Recorded {
+        private final Histogram histogram = new Histogram(MAX_TRACKED_NANOS, 3);
+        private long errors;
+
+        static EnumMap<Operation, Recorded> perOperation() {
+            EnumMap<Operation, Recorded> map = new EnumMap<>(Operation.class);
+            for (Operation op : Operation.values()) map.put(op, new Recorded());
+            return map;
+        }
+
+        Histogram histogram() { return histogram; }
+
+        void record(long nanos, boolean ok) {
+            histogram.recordValue(Math.min(nanos, MAX_TRACKED_NANOS));
+            if (!ok) errors++;
+        }
+
+        void add(Recorded other) {
+            histogram.add(other.histogram);
+            errors += other.errors;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", histogram.getTotalCount());
+            m.put("errors", errors);
+            m.put("throughput_rps", histogram.getTotalCount() / (double) DURATION_SECONDS);
+            m.put("mean_ms", histogram.getTotalCount() == 0 ? 0.0 : histogram.getMean() / 1e6);
+            m.put("p50_ms", millis(50));
+            m.put("p90_ms", millis(90));
+            m.put("p99_ms", millis(99));
+            m.put("p999_ms", millis(99.9));
+            m.put("max_ms", histogram.getMaxValue() / 1e6);
+            return m;
+        }
+
+        private double millis(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1e6;
+        }
+    }
+
+    /** What the clients send: operation weights, cart sizes and product popularity. */
+    private static final class Workload {
+        private final Operation[] operations;
+        private final int[] cumulativeWeights;
+        private final int minLines;
+        private final int maxLines;
+        // Cumulative Zipf probabilities over product ids 1..PRODUCTS.
+        private final double[] productCdf;
+
+        private Workload(Operation[] operations, int[] cumulativeWeights, int minLines, int maxLines, double[] productCdf) {
+            this.operations = operations;
+            this.cumulativeWeights = cumulativeWeights;
+            this.minLines = minLines;
+            this.maxLines = maxLines;
+            this.productCdf = productCdf;
+        }
+
+        static Workload fromProperties() {
+            List<Operation> ops = new ArrayList<>();
+            List<Integer> cumulative = new ArrayList<>();
+            int sum = 0;
+            for (String part : MIX.split(",")) {
+                String[] kv = part.trim().split("=");
+                int weight = Integer.parseInt(kv[1].trim());
+                if (weight <= 0) continue;
+                sum += weight;
+                ops.add(Operation.valueOf(kv[0].trim().toUpperCase()));
+                cumulative.add(sum);
+            }
+            if (ops.isEmpty()) throw new IllegalArgumentException("loadtest.mix has no positive weight");
+            String[] range = CART_LINES.split("-");
+            int min = Integer.parseInt(range[0].trim());
+            int max = range.length > 1 ? Integer.parseInt(range[1].trim()) : min;
+            if (min < 1 || max < min) throw new IllegalArgumentException("loadtest.cart-lines must be min-max with 1 <= min <= max");
+            double[] cdf = new double[PRODUCTS];
+            double total = 0;
+            for (int i = 0; i < PRODUCTS; i++) cdf[i] = total += 1 / Math.pow(i + 1, PRODUCT_SKEW);
+            for (int i = 0; i < PRODUCTS; i++) cdf[i] /= total;
+            return new Workload(ops.toArray(Operation[]::new), cumulative.stream().mapToInt(Integer::intValue).toArray(), min, max, cdf);
+        }
+
+        Operation operation(Random random) {
+            int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+            while (r >= cumulativeWeights[i]) i++;
+            return operations[i];
+        }
+
+        int lines(Random random) { return minLines + random.nextInt(maxLines - minLines + 1); }
+
+        long product(Random random) {
+            int i = Arrays.binarySearch(productCdf, random.nextDouble());
+            return 1 + (i >= 0 ? i : Math.min(-i - 1, productCdf.length - 1));
+        }
+    }
+
+    private static final class Client {
+        private final HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        private final String base;
+        private final List<Long> ids;
+        private final Workload workload;
+
+        Client(String base, List<Long> ids, Workload workload) {
+            this.base = base;
+            this.ids = ids;
+            this.workload = workload;
+        }
+
+        boolean call(Operation op, Random random) {
+            Long id = ids.get(random.nextInt(ids.size()));
+            HttpRequest request = switch (op) {
+                case APPLICABLE -> post("/api/applicable-coupons", cartJson(random));
+                case APPLY -> post("/api/apply-coupon/" + id, cartJson(random));
+                case GET -> HttpRequest.newBuilder(URI.create(base + "/api/coupons/" + id)).GET().build();
+            };
+            try {
+                return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        private HttpRequest post(String path, String body) {
+            return HttpRequest.newBuilder(URI.create(base + path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }
+
+        private String cartJson(Random random) {
+            StringBuilder sb = new StringBuilder("{\"cart\":{\"items\":[");
+            int lines = workload.lines(random);
+            for (int i = 0; i < lines; i++) {
+                if (i > 0) sb.append(',');
+                sb.append("{\"product_id\":").append(workload.product(random))
+                        .append(",\"quantity\":").append(1 + random.nextInt(5))
+                        .append(",\"price\":").append(1 + random.nextInt(200)).append('}');
+            }
+            return sb.append("]}}").toString();
+        }
+    }
+}
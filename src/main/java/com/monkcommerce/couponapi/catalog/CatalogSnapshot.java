@@ -0,0 +1,101 @@
+package com.monkcommerce.couponapi.catalog;
+
+import com.monkcommerce.couponapi.pricing.CompiledCart;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable, versioned set of compiled coupons as of one date. Writers derive a new snapshot instead
+ * of mutating this one, so readers can hold a reference for the whole request without locking.
+ *
+ * <p>Only coupons active on {@link #asOf()} are indexed, so evaluation never looks at expired or
+ * not-yet-started coupons. The snapshot also knows the next date on which any coupon starts or
+ * expires; from that instant on, {@link CouponCatalog} replaces it with one rolled to the new date.
+ */
+public final class CatalogSnapshot {
+
+    private final long version;
+    private final NavigableMap<Long, CompiledCoupon> byId;
+    private final LocalDate asOf;
+    private final ZoneId zone;
+    private final CouponIndex index;
+    private final long validUntilMillis;
+
+    CatalogSnapshot(long version, NavigableMap<Long, CompiledCoupon> byId, LocalDate asOf, ZoneId zone) {
+        this.version = version;
+        this.byId = Collections.unmodifiableNavigableMap(byId);
+        this.asOf = asOf;
+        this.zone = zone;
+        List<CompiledCoupon> active = new ArrayList<>(byId.size());
+        LocalDate nextTransition = null;
+        for (CompiledCoupon c : byId.values()) {
+            if (c.isActiveOn(asOf)) active.add(c);
+            LocalDate next = c.nextTransitionAfter(asOf);
+            if (next != null && (nextTransition == null || next.isBefore(nextTransition))) nextTransition = next;
+        }
+        this.index = new CouponIndex(active);
+        this.validUntilMillis = nextTransition == null
+                ? Long.MAX_VALUE : nextTransition.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    public long version() { return version; }
+
+    /** The date whose active coupons this snapshot evaluates. */
+    public LocalDate asOf() { return asOf; }
+
+    public CompiledCoupon get(Long id) { return byId.get(id); }
+
+    /** All coupons in id order, active or not. */
+    public Collection<CompiledCoupon> coupons() { return byId.values(); }
+
+    public int size() { return byId.size(); }
+
+    public boolean isActive(CompiledCoupon coupon) { return coupon.isActiveOn(asOf); }
+
+    /**
+     * Active coupons that can possibly yield a discount for the cart, in id order. Callers still run
+     * the full evaluator on each.
+     */
+    public List<CompiledCoupon> candidates(CompiledCart cart) {
+        return index.candidates(cart.productIds(), cart.total());
+    }
+
+    /**
+     * Active product-wise and BxGy coupons whose discount for some cart can change when lines for
+     * {@code productIds} change, in id order. A superset; callers still run the full evaluator.
+     */
+    public List<CompiledCoupon> affectedBy(long[] productIds) {
+        return index.affectedBy(productIds);
+    }
+
+    /** Active cart-wise coupons whose threshold lies between the two totals, so exactly one of them clears it. */
+    public List<CompiledCoupon> cartWiseCrossing(BigDecimal from, BigDecimal to) {
+        return index.cartWiseCrossing(from, to);
+    }
+
+    boolean isCurrentAt(long epochMillis) { return epochMillis < validUntilMillis; }
+
+    CatalogSnapshot rolledTo(LocalDate day) {
+        return new CatalogSnapshot(version + 1, new TreeMap<>(byId), day, zone);
+    }
+
+    /** This snapshot with {@code saved} put and {@code deleted} removed; itself if that changes nothing. */
+    CatalogSnapshot withChanges(Collection<CompiledCoupon> saved, Collection<Long> deleted) {
+        boolean changed = false;
+        for (CompiledCoupon coupon : saved) changed |= !coupon.equals(byId.get(coupon.id()));
+        for (Long id : deleted) changed |= byId.containsKey(id);
+        if (!changed) return this;
+        TreeMap<Long, CompiledCoupon> next = new TreeMap<>(byId);
+        for (CompiledCoupon coupon : saved) next.put(coupon.id(), coupon);
+        for (Long id : deleted) next.remove(id);
+        return new CatalogSnapshot(version + 1, next, asOf, zone);
+    }
+}
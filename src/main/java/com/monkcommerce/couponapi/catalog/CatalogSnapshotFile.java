@@ -0,0 +1,238 @@
+package com.monkcommerce.couponapi.catalog;
+
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.model.CouponType;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Binary, column-oriented image of compiled coupons, written and read through a memory-mapped file.
+ * Each field is one primitive array over all coupons (ids, type ordinals, epoch days, decimals as
+ * unscaled long plus scale, ...), with BxGy requirements flattened into product id and quantity
+ * arrays. A CRC32 over the body guards against torn or corrupt files.
+ *
+ * <p>The header carries the change-log watermark: every change committed before it is already in
+ * the image, so a reader only needs to catch up on changes after it.
+ */
+final class CatalogSnapshotFile {
+
+    static final int MAGIC = 0x43504E53; // "CPNS"
+    static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 8;
+
+    private static final int NO_INT = Integer.MIN_VALUE;
+    private static final long NO_LONG = Long.MIN_VALUE;
+    private static final byte NO_SCALE = Byte.MIN_VALUE;
+
+    /** A decoded file: the coupons it holds, the catalog version they had and the watermark. */
+    record Contents(Instant watermark, long version, TreeMap<Long, CompiledCoupon> byId) { }
+
+    private CatalogSnapshotFile() { }
+
+    /**
+     * Writes {@code coupons} to a temporary file next to {@code path} and moves it into place, so
+     * readers never see a half-written image.
+     *
+     * @throws IllegalArgumentException if a decimal does not fit a long with a byte-sized scale
+     */
+    static void write(Path path, Instant watermark, long version, Collection<CompiledCoupon> coupons) throws IOException {
+        int n = coupons.size();
+        int buyTotal = 0;
+        int getTotal = 0;
+        for (CompiledCoupon c : coupons) {
+            if (c.buyProducts() != null) buyTotal += c.buyProducts().size();
+            if (c.getProducts() != null) getTotal += c.getProducts().size();
+        }
+        // ids, type, start, expiry, threshold, discount, product, repetition, exclusive, max, max per user, buy/get counts
+        long perCoupon = 8 + 1 + 4 + 4 + 9 + 9 + 8 + 4 + 1 + 4 + 4 + 4 + 4;
+        long bodyBytes = perCoupon * n + 12L * (buyTotal + getTotal);
+        if (HEADER_BYTES + bodyBytes > Integer.MAX_VALUE) throw new IllegalArgumentException("Catalog too large for one snapshot file");
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + bodyBytes);
+            buf.position(HEADER_BYTES);
+            for (CompiledCoupon c : coupons) buf.putLong(c.id());
+            for (CompiledCoupon c : coupons) buf.put((byte) c.type().ordinal());
+            for (CompiledCoupon c : coupons) buf.putInt(epochDay(c.startDate()));
+            for (CompiledCoupon c : coupons) buf.putInt(epochDay(c.expiryDate()));
+            for (CompiledCoupon c : coupons) putDecimal(buf, c.threshold());
+            for (CompiledCoupon c : coupons) putDecimal(buf, c.discount());
+            for (CompiledCoupon c : coupons) buf.putLong(c.productId() == null ? NO_LONG : c.productId());
+            for (CompiledCoupon c : coupons) buf.putInt(orNone(c.repetitionLimit()));
+            for (CompiledCoupon c : coupons) buf.put((byte) (c.exclusive() ? 1 : 0));
+            for (CompiledCoupon c : coupons) buf.putInt(orNone(c.maxRedemptions()));
+            for (CompiledCoupon c : coupons) buf.putInt(orNone(c.maxRedemptionsPerUser()));
+            for (CompiledCoupon c : coupons) buf.putInt(c.buyProducts() == null ? -1 : c.buyProducts().size());
+            for (CompiledCoupon c : coupons) buf.putInt(c.getProducts() == null ? -1 : c.getProducts().size());
+            putRequirements(buf, coupons, true);
+            putRequirements(buf, coupons, false);
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.slice(HEADER_BYTES, (int) bodyBytes));
+            buf.position(0);
+            buf.putInt(MAGIC).putInt(FORMAT).putLong(watermark.toEpochMilli()).putLong(version)
+                    .putInt(n).putInt((int) bodyBytes).putLong(crc.getValue());
+            buf.force();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps and decodes {@code path}.
+     *
+     * @throws IOException if the file is missing, truncated, of another format or fails its checksum
+     */
+    static Contents read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) throw new IOException("Snapshot file truncated");
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != MAGIC) throw new IOException("Not a catalog snapshot file");
+            if (buf.getInt() != FORMAT) throw new IOException("Unsupported snapshot format");
+            Instant watermark = Instant.ofEpochMilli(buf.getLong());
+            long version = buf.getLong();
+            int n = buf.getInt();
+            int bodyBytes = buf.getInt();
+            long checksum = buf.getLong();
+            if (n < 0 || bodyBytes < 0 || HEADER_BYTES + (long) bodyBytes != size) throw new IOException("Snapshot file truncated");
+            CRC32 crc = new CRC32();
+            crc.update(buf.slice(HEADER_BYTES, bodyBytes));
+            if (crc.getValue() != checksum) throw new IOException("Snapshot checksum mismatch");
+
+            try {
+                return new Contents(watermark, version, decode(buf, n));
+            } catch (RuntimeException e) {
+                throw new IOException("Snapshot file corrupt", e);
+            }
+        }
+    }
+
+    private static TreeMap<Long, CompiledCoupon> decode(MappedByteBuffer buf, int n) {
+        long[] ids = new long[n];
+        byte[] types = new byte[n];
+        int[] starts = new int[n];
+        int[] expiries = new int[n];
+        BigDecimal[] thresholds = new BigDecimal[n];
+        BigDecimal[] discounts = new BigDecimal[n];
+        long[] productIds = new long[n];
+        int[] repetitionLimits = new int[n];
+        byte[] exclusive = new byte[n];
+        int[] maxRedemptions = new int[n];
+        int[] maxPerUser = new int[n];
+        int[] buyCounts = new int[n];
+        int[] getCounts = new int[n];
+        for (int i = 0; i < n; i++) ids[i] = buf.getLong();
+        buf.get(types);
+        for (int i = 0; i < n; i++) starts[i] = buf.getInt();
+        for (int i = 0; i < n; i++) expiries[i] = buf.getInt();
+        for (int i = 0; i < n; i++) thresholds[i] = getDecimal(buf);
+        for (int i = 0; i < n; i++) discounts[i] = getDecimal(buf);
+        for (int i = 0; i < n; i++) productIds[i] = buf.getLong();
+        for (int i = 0; i < n; i++) repetitionLimits[i] = buf.getInt();
+        buf.get(exclusive);
+        for (int i = 0; i < n; i++) maxRedemptions[i] = buf.getInt();
+        for (int i = 0; i < n; i++) maxPerUser[i] = buf.getInt();
+        for (int i = 0; i < n; i++) buyCounts[i] = buf.getInt();
+        for (int i = 0; i < n; i++) getCounts[i] = buf.getInt();
+        List<List<CouponDtos.BuyGet>> buys = getRequirements(buf, buyCounts);
+        List<List<CouponDtos.BuyGet>> gets = getRequirements(buf, getCounts);
+
+        CouponType[] allTypes = CouponType.values();
+        TreeMap<Long, CompiledCoupon> byId = new TreeMap<>();
+        for (int i = 0; i < n; i++) {
+            CouponDtos.Details d = new CouponDtos.Details();
+            d.setThreshold(thresholds[i]);
+            d.setDiscount(discounts[i]);
+            d.setProduct_id(productIds[i] == NO_LONG ? null : productIds[i]);
+            d.setBuy_products(buys.get(i));
+            d.setGet_products(gets.get(i));
+            d.setRepetition_limit(orNull(repetitionLimits[i]));
+            d.setExclusive(exclusive[i] == 1 ? Boolean.TRUE : null);
+            d.setMax_redemptions(orNull(maxRedemptions[i]));
+            d.setMax_redemptions_per_user(orNull(maxPerUser[i]));
+            byId.put(ids[i], CompiledCoupon.of(ids[i], allTypes[types[i]], date(starts[i]), date(expiries[i]), d));
+        }
+        return byId;
+    }
+
+    // All product ids of one side first, then all quantities.
+    private static void putRequirements(MappedByteBuffer buf, Collection<CompiledCoupon> coupons, boolean buy) {
+        for (CompiledCoupon c : coupons) {
+            List<CouponDtos.BuyGet> list = buy ? c.buyProducts() : c.getProducts();
+            if (list != null) for (CouponDtos.BuyGet bg : list) buf.putLong(bg.getProduct_id());
+        }
+        for (CompiledCoupon c : coupons) {
+            List<CouponDtos.BuyGet> list = buy ? c.buyProducts() : c.getProducts();
+            if (list != null) for (CouponDtos.BuyGet bg : list) buf.putInt(bg.getQuantity());
+        }
+    }
+
+    private static List<List<CouponDtos.BuyGet>> getRequirements(MappedByteBuffer buf, int[] counts) {
+        int total = 0;
+        for (int count : counts) if (count > 0) total += count;
+        long[] productIds = new long[total];
+        int[] quantities = new int[total];
+        for (int i = 0; i < total; i++) productIds[i] = buf.getLong();
+        for (int i = 0; i < total; i++) quantities[i] = buf.getInt();
+        List<List<CouponDtos.BuyGet>> lists = new ArrayList<>(counts.length);
+        int at = 0;
+        for (int count : counts) {
+            if (count < 0) {
+                lists.add(null);
+                continue;
+            }
+            List<CouponDtos.BuyGet> list = new ArrayList<>(count);
+            for (int j = 0; j < count; j++, at++) {
+                CouponDtos.BuyGet bg = new CouponDtos.BuyGet();
+                bg.setProduct_id(productIds[at]);
+                bg.setQuantity(quantities[at]);
+                list.add(bg);
+            }
+            lists.add(list);
+        }
+        return lists;
+    }
+
+    private static void putDecimal(MappedByteBuffer buf, BigDecimal value) {
+        if (value == null) {
+            buf.putLong(0).put(NO_SCALE);
+            return;
+        }
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() > 63 || value.scale() <= NO_SCALE || value.scale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Decimal " + value + " does not fit the snapshot format");
+        }
+        buf.putLong(unscaled.longValue()).put((byte) value.scale());
+    }
+
+    private static BigDecimal getDecimal(MappedByteBuffer buf) {
+        long unscaled = buf.getLong();
+        byte scale = buf.get();
+        return scale == NO_SCALE ? null : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    private static int epochDay(LocalDate date) { return date == null ? NO_INT : Math.toIntExact(date.toEpochDay()); }
+
+    private static LocalDate date(int epochDay) { return epochDay == NO_INT ? null : LocalDate.ofEpochDay(epochDay); }
+
+    private static int orNone(Integer value) { return value == null ? NO_INT : value; }
+
+    private static Integer orNull(int value) { return value == NO_INT ? null : value; }
+}
@@ -0,0 +1,110 @@
+package com.monkcommerce.couponapi.catalog;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm start for the catalog. While running, the catalog is written to {@code coupon.snapshot.path}
+ * every {@code coupon.snapshot.write-interval-ms} (when it has changed) and on shutdown, as a
+ * {@link CatalogSnapshotFile} tagged with the change-log watermark. On startup the file is mapped,
+ * installed as the first snapshot, and only changes logged after the watermark are read from the
+ * database.
+ *
+ * <p>A missing, corrupt or foreign file, or one older than the change log retains, is ignored and
+ * the catalog is loaded in full as before. Disabled unless a path is set.
+ */
+@Component
+public class CatalogSnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSnapshotStore.class);
+
+    private final CouponCatalog couponCatalog;
+    private final CouponChangeLog couponChangeLog;
+    private final Path path;
+    private final ScheduledExecutorService writer;
+    private long lastWrittenVersion = -1;
+
+    public CatalogSnapshotStore(CouponCatalog couponCatalog, CouponChangeLog couponChangeLog,
+                                @Value("${coupon.snapshot.path:}") String path,
+                                @Value("${coupon.snapshot.write-interval-ms:60000}") long writeIntervalMillis) {
+        this.couponCatalog = couponCatalog;
+        this.couponChangeLog = couponChangeLog;
+        this.path = path.isBlank() ? null : Path.of(path);
+        if (this.path == null) {
+            this.writer = null;
+            return;
+        }
+        warmStart();
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-snapshot-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.scheduleWithFixedDelay(this::writeQuietly, writeIntervalMillis, writeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Restores the catalog from the file if it is usable; false if the catalog will load in full instead. */
+    boolean warmStart() {
+        long start = System.nanoTime();
+        CatalogSnapshotFile.Contents contents;
+        try {
+            contents = CatalogSnapshotFile.read(path);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            log.warn("Ignoring catalog snapshot {}: {}", path, e.getMessage());
+            return false;
+        }
+        if (!couponChangeLog.covers(contents.watermark())) {
+            log.info("Ignoring catalog snapshot {}: written at {}, older than the change log", path, contents.watermark());
+            return false;
+        }
+        if (!couponCatalog.install(contents.version() + 1, contents.byId())) return false;
+        int caughtUp = couponChangeLog.catchUpFrom(contents.watermark());
+        lastWrittenVersion = contents.version();
+        log.info("Restored {} coupons from {} and caught up on {} changes in {} ms",
+                contents.byId().size(), path, caughtUp, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    /** Writes the current catalog if it changed since the last write; false if there was nothing to write. */
+    public synchronized boolean write() throws IOException {
+        if (path == null) return false;
+        // Read the watermark first: the snapshot taken after it holds at least everything before it.
+        Instant watermark = couponChangeLog.watermark();
+        CatalogSnapshot snapshot = couponCatalog.loaded();
+        if (snapshot == null || snapshot.version() == lastWrittenVersion) return false;
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        CatalogSnapshotFile.write(path, watermark, snapshot.version(), snapshot.coupons());
+        lastWrittenVersion = snapshot.version();
+        return true;
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Writing catalog snapshot {} failed: {}", path, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (writer == null) return;
+        writer.shutdown();
+        try { writer.awaitTermination(5, TimeUnit.SECONDS); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        writeQuietly();
+    }
+}
@@ -0,0 +1,72 @@
+package com.monkcommerce.couponapi.catalog;
+
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.pricing.FixedPointRate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Immutable, pre-parsed view of a {@code Coupon} row used on the evaluation hot path.
+ * {@code discountRate} is {@code discount / 100}, so evaluators only multiply and round;
+ * {@code fixedPointRate} is the raw discount for the long-based evaluator, or null if it does not fit.
+ */
+public record CompiledCoupon(
+        Long id,
+        CouponType type,
+        LocalDate startDate,
+        LocalDate expiryDate,
+        BigDecimal threshold,
+        BigDecimal discount,
+        BigDecimal discountRate,
+        FixedPointRate fixedPointRate,
+        Long productId,
+        List<CouponDtos.BuyGet> buyProducts,
+        List<CouponDtos.BuyGet> getProducts,
+        Integer repetitionLimit,
+        boolean exclusive,
+        Integer maxRedemptions,
+        Integer maxRedemptionsPerUser) {
+
+    public static CompiledCoupon of(Long id, CouponType type, LocalDate startDate, LocalDate expiryDate, CouponDtos.Details d) {
+        BigDecimal discount = d.getDiscount();
+        return new CompiledCoupon(
+                id,
+                type,
+                startDate,
+                expiryDate,
+                d.getThreshold(),
+                discount,
+                discount == null ? null : discount.movePointLeft(2),
+                FixedPointRate.of(discount),
+                d.getProduct_id(),
+                d.getBuy_products() == null ? null : List.copyOf(d.getBuy_products()),
+                d.getGet_products() == null ? null : List.copyOf(d.getGet_products()),
+                d.getRepetition_limit(),
+                Boolean.TRUE.equals(d.getExclusive()),
+                d.getMax_redemptions(),
+                d.getMax_redemptions_per_user());
+    }
+
+    public boolean hasRedemptionLimit() {
+        return maxRedemptions != null || maxRedemptionsPerUser != null;
+    }
+
+    public boolean isExpired(LocalDate today) {
+        return expiryDate != null && today.isAfter(expiryDate);
+    }
+
+    /** Both dates are inclusive. */
+    public boolean isActiveOn(LocalDate day) {
+        return (startDate == null || !day.isBefore(startDate)) && !isExpired(day);
+    }
+
+    /** First date after {@code day} on which this coupon starts or stops being active, or null if none. */
+    LocalDate nextTransitionAfter(LocalDate day) {
+        if (startDate != null && startDate.isAfter(day)) return startDate;
+        if (expiryDate != null && !expiryDate.isBefore(day)) return expiryDate.plusDays(1);
+        return null;
+    }
+}
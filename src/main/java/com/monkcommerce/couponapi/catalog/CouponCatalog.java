@@ -0,0 +1,167 @@
+package com.monkcommerce.couponapi.catalog;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.metrics.CouponMetrics;
+import com.monkcommerce.couponapi.repository.CouponRepository;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory catalog of compiled coupons. Reads are a single volatile load; writes build a new
+ * {@link CatalogSnapshot} and publish it once the surrounding transaction has committed, so a
+ * rolled back write is never visible to evaluation.
+ */
+@Component
+public class CouponCatalog {
+
+    // Ids per IN list when reading coupons back.
+    private static final int REFRESH_CHUNK = 1000;
+
+    private final CouponRepository couponRepository;
+    private final TransactionOperations transactionOperations;
+    private final Clock clock;
+    private final CouponMetrics couponMetrics;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Object writeLock = new Object();
+    private volatile CatalogSnapshot current;
+
+    public CouponCatalog(CouponRepository couponRepository, TransactionOperations transactionOperations, Clock clock,
+                         CouponMetrics couponMetrics) {
+        this.couponRepository = couponRepository;
+        this.transactionOperations = transactionOperations;
+        this.clock = clock;
+        this.couponMetrics = couponMetrics;
+    }
+
+    /** The current snapshot, rolled forward first if a coupon has started or expired since it was built. */
+    public CatalogSnapshot snapshot() {
+        CatalogSnapshot s = current;
+        if (s != null && s.isCurrentAt(clock.millis())) return s;
+        synchronized (writeLock) {
+            if (current == null) current = load(0L);
+            else if (!current.isCurrentAt(clock.millis())) current = current.rolledTo(LocalDate.now(clock));
+            return current;
+        }
+    }
+
+    /** Discards the current snapshot and rebuilds it from the database. */
+    public void reload() {
+        synchronized (writeLock) {
+            CatalogSnapshot s = current;
+            current = load(s == null ? 0L : s.version() + 1);
+        }
+    }
+
+    /** The published snapshot, or null if nothing has been loaded yet; never loads or rolls. */
+    CatalogSnapshot loaded() { return current; }
+
+    /** Publishes coupons restored from elsewhere as the first snapshot; false if one is already loaded. */
+    boolean install(long version, TreeMap<Long, CompiledCoupon> byId) {
+        synchronized (writeLock) {
+            if (current != null) return false;
+            current = new CatalogSnapshot(version, byId, LocalDate.now(clock), clock.getZone());
+            return true;
+        }
+    }
+
+    public void onSaved(Coupon coupon) {
+        onSaved(List.of(coupon));
+    }
+
+    /** Publishes a whole chunk of saved coupons as one new snapshot. */
+    public void onSaved(List<Coupon> coupons) {
+        List<CompiledCoupon> compiled = coupons.stream().map(this::compile).toList();
+        afterCommit(() -> publish(compiled, List.of()));
+    }
+
+    public void onDeleted(Long id) {
+        onDeleted(List.of(id));
+    }
+
+    /** Publishes a whole chunk of deleted coupons as one new snapshot. */
+    public void onDeleted(List<Long> ids) {
+        List<Long> deleted = List.copyOf(ids);
+        afterCommit(() -> publish(List.of(), deleted));
+    }
+
+    /**
+     * Reads the coupons back and publishes them as one snapshot, dropping any no longer in the
+     * database; for bulk writes that skipped {@link #onSaved} and for changes made by other nodes.
+     * The write lock is held while reading, so a write that commits meanwhile is published after
+     * this and wins.
+     */
+    public void refresh(List<Long> ids) {
+        synchronized (writeLock) {
+            if (current == null) return;
+            List<CompiledCoupon> saved = new ArrayList<>(ids.size());
+            Set<Long> missing = new HashSet<>(ids);
+            transactionOperations.executeWithoutResult(status -> {
+                for (int from = 0; from < ids.size(); from += REFRESH_CHUNK) {
+                    for (Coupon coupon : couponRepository.findAllById(ids.subList(from, Math.min(from + REFRESH_CHUNK, ids.size())))) {
+                        saved.add(compile(coupon));
+                        missing.remove(coupon.getId());
+                    }
+                }
+            });
+            current = current.withChanges(saved, missing);
+        }
+    }
+
+    public CompiledCoupon compile(Coupon coupon) {
+        CouponDtos.Details d = coupon.getDetailsJson() != null ? readDetails(coupon) : coupon.getDetails();
+        return CompiledCoupon.of(coupon.getId(), coupon.getType(), coupon.getStartDate(), coupon.getExpiryDate(), d);
+    }
+
+    // Rows written before rules were normalized, until LegacyCouponMigration has converted them.
+    public CouponDtos.Details readDetails(Coupon coupon) {
+        long start = System.nanoTime();
+        try { return objectMapper.readValue(coupon.getDetailsJson(), CouponDtos.Details.class); }
+        catch (JsonProcessingException e) { throw new RuntimeException(e); }
+        finally { couponMetrics.detailsParse(System.nanoTime() - start); }
+    }
+
+    // One transaction so the rules' buy/get collections load alongside the coupons.
+    private CatalogSnapshot load(long version) {
+        long start = System.nanoTime();
+        TreeMap<Long, CompiledCoupon> byId = transactionOperations.execute(status -> {
+            TreeMap<Long, CompiledCoupon> compiled = new TreeMap<>();
+            for (Coupon coupon : couponRepository.findAll()) compiled.put(coupon.getId(), compile(coupon));
+            return compiled;
+        });
+        couponMetrics.catalogLoad(System.nanoTime() - start);
+        return new CatalogSnapshot(version, byId, LocalDate.now(clock), clock.getZone());
+    }
+
+    private void publish(List<CompiledCoupon> saved, List<Long> deleted) {
+        synchronized (writeLock) {
+            // Not loaded yet: the first reader will pick the committed rows up from the database.
+            if (current == null) return;
+            current = current.withChanges(saved, deleted);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() { action.run(); }
+        });
+    }
+}
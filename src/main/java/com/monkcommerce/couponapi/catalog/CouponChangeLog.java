@@ -0,0 +1,149 @@
+package com.monkcommerce.couponapi.catalog;
+
+import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.entity.CouponChange;
+import com.monkcommerce.couponapi.repository.CouponChangeRepository;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the catalogs of several application nodes sharing one database in step. Every coupon write
+ * appends a {@link CouponChange} in its own transaction; each node polls for changes from other
+ * nodes and re-reads only the coupons they name, publishing them as one new snapshot.
+ *
+ * <p>Each poll looks back {@code coupon.change-log.lookback-ms} from the previous one, so a change is
+ * picked up even if its transaction committed after a later-stamped one. A write committed at time
+ * T is therefore served by every node by T plus one poll interval, provided write transactions and
+ * clock skew between nodes stay within the lookback.
+ */
+@Component
+public class CouponChangeLog {
+
+    private static final Logger log = LoggerFactory.getLogger(CouponChangeLog.class);
+    private static final Duration PRUNE_EVERY = Duration.ofHours(1);
+
+    private final CouponChangeRepository changeRepository;
+    private final CouponCatalog couponCatalog;
+    private final TransactionOperations transactionOperations;
+    private final Clock clock;
+    private final Duration lookback;
+    private final Duration retention;
+    private final String nodeId = UUID.randomUUID().toString();
+    // Changes already applied that are still inside the lookback window, by seq.
+    private final Map<Long, Instant> applied = new HashMap<>();
+    private final ScheduledExecutorService poller;
+    private Instant lastPoll;
+    private Instant lastPrune = Instant.EPOCH;
+
+    public CouponChangeLog(CouponChangeRepository changeRepository, CouponCatalog couponCatalog,
+                           TransactionOperations transactionOperations, Clock clock,
+                           @Value("${coupon.change-log.poll-interval-ms:1000}") long pollIntervalMillis,
+                           @Value("${coupon.change-log.lookback-ms:10000}") long lookbackMillis,
+                           @Value("${coupon.change-log.retention-hours:24}") long retentionHours) {
+        this.changeRepository = changeRepository;
+        this.couponCatalog = couponCatalog;
+        this.transactionOperations = transactionOperations;
+        this.clock = clock;
+        this.lookback = Duration.ofMillis(lookbackMillis);
+        this.retention = Duration.ofHours(retentionHours);
+        this.lastPoll = clock.instant();
+        if (pollIntervalMillis <= 0) {
+            this.poller = null;
+            return;
+        }
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "coupon-change-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::pollQuietly, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Records saved coupons; call inside the writing transaction. */
+    public void saved(List<Coupon> coupons) {
+        Instant now = clock.instant();
+        List<CouponChange> changes = new ArrayList<>(coupons.size());
+        for (Coupon coupon : coupons) changes.add(new CouponChange(coupon.getId(), CouponChange.Operation.SAVED, nodeId, now));
+        changeRepository.saveAll(changes);
+    }
+
+    /** Records a deleted coupon; call inside the writing transaction. */
+    public void deleted(Long couponId) {
+        deleted(List.of(couponId));
+    }
+
+    /** Records deleted coupons; call inside the writing transaction. */
+    public void deleted(List<Long> couponIds) {
+        Instant now = clock.instant();
+        List<CouponChange> changes = new ArrayList<>(couponIds.size());
+        for (Long id : couponIds) changes.add(new CouponChange(id, CouponChange.Operation.DELETED, nodeId, now));
+        changeRepository.saveAll(changes);
+    }
+
+    /** Applies changes from other nodes since the previous poll; returns how many coupons were re-read. */
+    public synchronized int poll() {
+        Instant now = clock.instant();
+        Instant since = lastPoll.minus(lookback);
+        applied.values().removeIf(changedAt -> changedAt.isBefore(since));
+
+        List<CouponChange> fresh = transactionOperations.execute(status -> changeRepository.findSince(since, nodeId)
+                .stream().filter(change -> !applied.containsKey(change.getSeq())).toList());
+        Set<Long> ids = new LinkedHashSet<>();
+        for (CouponChange change : fresh) ids.add(change.getCouponId());
+        // The current row decides, whatever the operation logged: deletes and saves may arrive out of order.
+        // Read under the catalog's write lock, so a local write committing meanwhile is published after it.
+        couponCatalog.refresh(List.copyOf(ids));
+        for (CouponChange change : fresh) applied.put(change.getSeq(), change.getChangedAt());
+        lastPoll = now;
+        return ids.size();
+    }
+
+    /**
+     * Every change committed before this instant is already in this node's catalog. Without polling
+     * only this node writes, so that holds for now; {@code lastPoll} would stay at startup.
+     */
+    synchronized Instant watermark() { return poller != null ? lastPoll : clock.instant(); }
+
+    /** Whether changes after {@code watermark} are all still in the log, i.e. not yet pruned. */
+    boolean covers(Instant watermark) {
+        return !watermark.minus(lookback).isBefore(clock.instant().minus(retention));
+    }
+
+    /** Re-applies every change after {@code watermark}, e.g. on top of a catalog restored from a file. */
+    synchronized int catchUpFrom(Instant watermark) {
+        applied.clear();
+        lastPoll = watermark;
+        return poll();
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+            Instant now = clock.instant();
+            if (lastPrune.plus(PRUNE_EVERY).isBefore(now)) {
+                transactionOperations.executeWithoutResult(status -> changeRepository.deleteOlderThan(now.minus(retention)));
+                lastPrune = now;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Polling coupon changes failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (poller != null) poller.shutdownNow();
+    }
+}
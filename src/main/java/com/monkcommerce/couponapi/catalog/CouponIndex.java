@@ -0,0 +1,116 @@
+package com.monkcommerce.couponapi.catalog;
+
+import com.monkcommerce.couponapi.dto.CouponDtos;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Lookup structures over a snapshot's coupons. PRODUCT_WISE and BXGY coupons are reachable through
+ * the product ids they need in the cart; CART_WISE coupons are sorted by threshold so the ones a
+ * cart total clears form a prefix. Coupons whose details can never yield a discount are left out.
+ *
+ * <p>BxGy coupons are also listed under get products that are not buy products, since the free
+ * value reads their price; cart sessions use this to find every coupon a changed product affects.
+ */
+final class CouponIndex {
+
+    private static final CompiledCoupon[] NONE = new CompiledCoupon[0];
+
+    private final Map<Long, CompiledCoupon[]> byProduct;
+    private final Map<Long, CompiledCoupon[]> bxGyByGetProduct;
+    private final BigDecimal[] thresholds;
+    private final CompiledCoupon[] cartWiseByThreshold;
+
+    CouponIndex(Collection<CompiledCoupon> coupons) {
+        Map<Long, List<CompiledCoupon>> products = new HashMap<>();
+        Map<Long, List<CompiledCoupon>> getProducts = new HashMap<>();
+        List<CompiledCoupon> cartWise = new ArrayList<>();
+        for (CompiledCoupon c : coupons) {
+            switch (c.type()) {
+                case CART_WISE -> {
+                    if (c.threshold() != null && c.discountRate() != null) cartWise.add(c);
+                }
+                case PRODUCT_WISE -> {
+                    if (c.productId() != null && c.discountRate() != null) {
+                        products.computeIfAbsent(c.productId(), k -> new ArrayList<>()).add(c);
+                    }
+                }
+                case BXGY -> {
+                    if (c.buyProducts() == null || c.buyProducts().isEmpty() || c.getProducts() == null) continue;
+                    // Every buy product must be in the cart, so any one of them is a sufficient key.
+                    Set<Long> keys = new HashSet<>();
+                    for (CouponDtos.BuyGet buy : c.buyProducts()) {
+                        if (keys.add(buy.getProduct_id())) {
+                            products.computeIfAbsent(buy.getProduct_id(), k -> new ArrayList<>()).add(c);
+                        }
+                    }
+                    for (CouponDtos.BuyGet get : c.getProducts()) {
+                        if (keys.add(get.getProduct_id())) {
+                            getProducts.computeIfAbsent(get.getProduct_id(), k -> new ArrayList<>()).add(c);
+                        }
+                    }
+                }
+            }
+        }
+        this.byProduct = new HashMap<>(products.size() * 2);
+        products.forEach((k, v) -> byProduct.put(k, v.toArray(NONE)));
+        this.bxGyByGetProduct = new HashMap<>(getProducts.size() * 2);
+        getProducts.forEach((k, v) -> bxGyByGetProduct.put(k, v.toArray(NONE)));
+        cartWise.sort(Comparator.comparing(CompiledCoupon::threshold));
+        this.cartWiseByThreshold = cartWise.toArray(NONE);
+        this.thresholds = new BigDecimal[cartWiseByThreshold.length];
+        for (int i = 0; i < thresholds.length; i++) thresholds[i] = cartWiseByThreshold[i].threshold();
+    }
+
+    /** Coupons that may apply to a cart with these product ids and total, in id order without duplicates. */
+    List<CompiledCoupon> candidates(long[] productIds, BigDecimal cartTotal) {
+        int cartWiseCount = countBelow(cartTotal);
+        List<CompiledCoupon> result = new ArrayList<>(cartWiseCount + productIds.length);
+        for (int i = 0; i < cartWiseCount; i++) result.add(cartWiseByThreshold[i]);
+        for (long productId : productIds) {
+            CompiledCoupon[] hits = byProduct.get(productId);
+            if (hits != null) Collections.addAll(result, hits);
+        }
+        return sortedDistinct(result);
+    }
+
+    /** Product-wise and BxGy coupons whose discount depends on any of these products, in id order. */
+    List<CompiledCoupon> affectedBy(long[] productIds) {
+        List<CompiledCoupon> result = new ArrayList<>();
+        for (long productId : productIds) {
+            CompiledCoupon[] hits = byProduct.get(productId);
+            if (hits != null) Collections.addAll(result, hits);
+            hits = bxGyByGetProduct.get(productId);
+            if (hits != null) Collections.addAll(result, hits);
+        }
+        return sortedDistinct(result);
+    }
+
+    /** Cart-wise coupons that apply to one of these totals but not the other. */
+    List<CompiledCoupon> cartWiseCrossing(BigDecimal from, BigDecimal to) {
+        int a = countBelow(from);
+        int b = countBelow(to);
+        return Arrays.asList(cartWiseByThreshold).subList(Math.min(a, b), Math.max(a, b));
+    }
+
+    private static List<CompiledCoupon> sortedDistinct(List<CompiledCoupon> result) {
+        result.sort(Comparator.comparing(CompiledCoupon::id));
+        int w = 0;
+        for (int r = 0; r < result.size(); r++) {
+            if (w == 0 || !result.get(w - 1).id().equals(result.get(r).id())) result.set(w++, result.get(r));
+        }
+        return result.subList(0, w);
+    }
+
+    // Number of cart-wise coupons whose threshold is strictly below the total.
+    private int countBelow(BigDecimal total) {
+        int lo = 0, hi = thresholds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (thresholds[mid].compareTo(total) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
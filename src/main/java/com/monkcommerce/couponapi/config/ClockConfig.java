@@ -0,0 +1,16 @@
+package com.monkcommerce.couponapi.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+@Configuration
+public class ClockConfig {
+
+    // Single source of "today" for coupon start and expiry dates; tests substitute a fixed clock.
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+}
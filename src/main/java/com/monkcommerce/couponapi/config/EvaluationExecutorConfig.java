@@ -0,0 +1,42 @@
+package com.monkcommerce.couponapi.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+public class EvaluationExecutorConfig {
+
+    // Kept apart from the common pool so batch work cannot starve other parallel streams.
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool evaluationPool(@Value("${coupon.evaluation.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism(parallelism));
+    }
+
+    // Runs the async applicable-coupons stages. With spring.threads.virtual.enabled (Java 21+) every
+    // stage gets its own virtual thread, matching what Tomcat and JPA calls run on in that mode.
+    @Bean
+    public AsyncTaskExecutor evaluationStageExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                                     @Value("${coupon.evaluation.parallelism:0}") int parallelism) {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("coupon-eval-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("coupon-eval-");
+        executor.setCorePoolSize(parallelism(parallelism));
+        executor.setMaxPoolSize(parallelism(parallelism));
+        executor.setQueueCapacity(10_000);
+        return executor;
+    }
+
+    private static int parallelism(int configured) {
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+}
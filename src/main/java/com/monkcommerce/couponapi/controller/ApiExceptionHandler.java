@@ -0,0 +1,35 @@
+package com.monkcommerce.couponapi.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Maps the exceptions the code endpoints throw to {@code {"error": message}} responses: a missing
+ * code or coupon is 404 and a rejected request is 400. Limited to {@link CouponCodeController}; the
+ * endpoints in {@link CouponController} map their own errors.
+ */
+@RestControllerAdvice(assignableTypes = CouponCodeController.class)
+public class ApiExceptionHandler {
+
+    @ExceptionHandler(NoSuchElementException.class)
+    public ResponseEntity<Map<String, Object>> notFound(NoSuchElementException e) {
+        return error(HttpStatus.NOT_FOUND, e);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> badRequest(IllegalArgumentException e) {
+        return error(HttpStatus.BAD_REQUEST, e);
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(HttpStatus status, RuntimeException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", e.getMessage());
+        return ResponseEntity.status(status).body(body);
+    }
+}
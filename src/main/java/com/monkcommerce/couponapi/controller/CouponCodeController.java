@@ -0,0 +1,54 @@
+package com.monkcommerce.couponapi.controller;
+
+import com.monkcommerce.couponapi.dto.ApplyCouponResponse;
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.service.CouponCodeService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Map;
+
+/** Single-use codes; errors are mapped by {@link ApiExceptionHandler}. */
+@RestController
+@RequestMapping("/api")
+@Tag(name = "Coupon codes", description = "Generate, resolve and redeem single-use coupon codes")
+public class CouponCodeController {
+
+    private final CouponCodeService couponCodeService;
+
+    public CouponCodeController(CouponCodeService couponCodeService) {
+        this.couponCodeService = couponCodeService;
+    }
+
+    @PostMapping("/coupons/{id}/codes")
+    @Operation(summary = "Generate single-use codes for a coupon; fetch them with GET on the same path")
+    public Map<String, Object> generateCodes(@PathVariable Long id, @RequestParam int count,
+                                             @RequestParam(required = false) String prefix) {
+        return Map.of("coupon_id", id, "generated", couponCodeService.generate(id, count, prefix));
+    }
+
+    @GetMapping(value = "/coupons/{id}/codes", produces = "application/x-ndjson")
+    @Operation(summary = "Stream a coupon's single-use codes as newline-delimited JSON")
+    public ResponseEntity<StreamingResponseBody> exportCodes(@PathVariable Long id) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(out -> couponCodeService.exportNdjson(id, out));
+    }
+
+    @GetMapping("/codes/{code}")
+    @Operation(summary = "Resolve a single-use code to its coupon without touching the database")
+    public Map<String, Object> resolveCode(@PathVariable String code) { return couponCodeService.resolve(code); }
+
+    @PostMapping("/apply-code/{code}")
+    @Operation(summary = "Apply a single-use code's coupon to the cart and mark the code redeemed")
+    public ApplyCouponResponse applyCode(@PathVariable String code, @RequestParam(name = "user_id", required = false) String userId,
+                                         @Valid @RequestBody Map<String, CartDto> request) {
+        return couponCodeService.redeem(code, request.get("cart"), userId);
+    }
+}
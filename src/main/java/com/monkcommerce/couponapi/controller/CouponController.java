@@ -1,20 +1,44 @@
 package com.monkcommerce.couponapi.controller;
 
+import com.monkcommerce.couponapi.dto.ApplyCouponResponse;
+import com.monkcommerce.couponapi.dto.CartBatchRequest;
 import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CartSessionDtos;
 import com.monkcommerce.couponapi.dto.CouponDtos;
 import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.service.CampaignSimulator;
+import com.monkcommerce.couponapi.service.CartSessionService;
+import com.monkcommerce.couponapi.service.CouponArchiver;
+import com.monkcommerce.couponapi.service.CouponBatchService;
+import com.monkcommerce.couponapi.service.CouponImportService;
+import com.monkcommerce.couponapi.service.CouponListingService;
 import com.monkcommerce.couponapi.service.CouponService;
+import com.monkcommerce.couponapi.service.CouponStackingSolver;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api")
@@ -22,9 +46,33 @@ import java.util.Map;
 public class CouponController {
 
     private final CouponService couponService;
+    private final CouponBatchService couponBatchService;
+    private final CouponStackingSolver couponStackingSolver;
+    private final CouponListingService couponListingService;
+    private final CouponImportService couponImportService;
+    private final CampaignSimulator campaignSimulator;
+    private final CartSessionService cartSessionService;
+    private final CouponArchiver couponArchiver;
+    private final AsyncTaskExecutor evaluationStageExecutor;
+    // Release the request thread while applicable-coupons is evaluated in stages on evaluationStageExecutor.
+    private final boolean asyncEvaluation;
 
-    public CouponController(CouponService couponService) {
+    public CouponController(CouponService couponService, CouponBatchService couponBatchService,
+                            CouponStackingSolver couponStackingSolver, CouponListingService couponListingService,
+                            CouponImportService couponImportService, CampaignSimulator campaignSimulator,
+                            CartSessionService cartSessionService, CouponArchiver couponArchiver,
+                            @Qualifier("evaluationStageExecutor") AsyncTaskExecutor evaluationStageExecutor,
+                            @Value("${coupon.evaluation.async:false}") boolean asyncEvaluation) {
         this.couponService = couponService;
+        this.couponBatchService = couponBatchService;
+        this.couponStackingSolver = couponStackingSolver;
+        this.couponListingService = couponListingService;
+        this.couponImportService = couponImportService;
+        this.campaignSimulator = campaignSimulator;
+        this.cartSessionService = cartSessionService;
+        this.couponArchiver = couponArchiver;
+        this.evaluationStageExecutor = evaluationStageExecutor;
+        this.asyncEvaluation = asyncEvaluation;
     }
 
     @PostMapping("/coupons")
@@ -38,6 +86,73 @@ public class CouponController {
     @Operation(summary = "List all coupons")
     public List<Coupon> list() { return couponService.list(); }
 
+    @PostMapping(value = "/coupons/import", consumes = {"application/x-ndjson", "text/csv"})
+    @Operation(summary = "Bulk-create coupons from NDJSON or CSV (header row required); reports errors by line")
+    public ResponseEntity<Map<String, Object>> importCoupons(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                             InputStream body) throws IOException {
+        CouponImportService.Format format = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType("text/csv"))
+                ? CouponImportService.Format.CSV : CouponImportService.Format.NDJSON;
+        try {
+            return ResponseEntity.ok(couponImportService.importCoupons(body, format));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping(value = "/coupons/simulate", consumes = "application/x-ndjson")
+    @Operation(summary = "Estimate a draft coupon's cost: first line is the coupon, then one cart per line; nothing is saved")
+    public ResponseEntity<Map<String, Object>> simulate(@RequestParam(defaultValue = "10") int top,
+                                                        InputStream body) throws IOException {
+        try {
+            return ResponseEntity.ok(campaignSimulator.simulate(body, top));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/coupons/page")
+    @Operation(summary = "List coupons one keyset page at a time; pass next_cursor as 'after' for the next page")
+    public Map<String, Object> page(@RequestParam(required = false) Long after,
+                                    @RequestParam(defaultValue = "100") int limit,
+                                    @RequestParam(required = false) CouponType type,
+                                    @RequestParam(required = false) Boolean active) {
+        return couponListingService.page(after, limit, new CouponListingService.Filter(type, active));
+    }
+
+    @GetMapping(value = "/coupons/export", produces = "application/x-ndjson")
+    @Operation(summary = "Stream all matching coupons as newline-delimited JSON")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) CouponType type,
+                                                        @RequestParam(required = false) Boolean active) {
+        CouponListingService.Filter filter = new CouponListingService.Filter(type, active);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(out -> couponListingService.exportNdjson(filter, out));
+    }
+
+    @GetMapping("/coupons/archive")
+    @Operation(summary = "List archived coupons one keyset page at a time; pass next_cursor as 'after' for the next page")
+    public Map<String, Object> archivePage(@RequestParam(required = false) Long after,
+                                           @RequestParam(defaultValue = "100") int limit) {
+        return couponArchiver.page(after, limit);
+    }
+
+    @PostMapping("/coupons/archive/run")
+    @Operation(summary = "Archive coupons past their expiry date plus the grace period now instead of on schedule")
+    public Map<String, Object> runArchive() {
+        return Map.of("archived", couponArchiver.archive());
+    }
+
+    @PostMapping("/coupons/archive/{id}/restore")
+    @Operation(summary = "Move an archived coupon back under its id, optionally with a new expiry date")
+    public ResponseEntity<?> restore(@PathVariable Long id,
+                                     @RequestParam(name = "expiry_date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate expiryDate) {
+        try {
+            return ResponseEntity.ok(couponArchiver.restore(id, expiryDate));
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/coupons/{id}")
     @Operation(summary = "Get coupon by id")
     public Coupon get(@PathVariable Long id) { return couponService.get(id); }
@@ -54,20 +169,80 @@ public class CouponController {
 
     @PostMapping("/applicable-coupons")
     @Operation(summary = "Fetch applicable coupons and discounts for given cart")
-    public Map<String, Object> applicable(@Valid @RequestBody Map<String, CartDto> request) {
+    public CompletableFuture<Map<String, Object>> applicable(@Valid @RequestBody Map<String, CartDto> request) {
+        CartDto cart = request.get("cart");
+        CompletableFuture<List<Map<String, Object>>> list = asyncEvaluation
+                ? couponService.applicableCouponsAsync(cart, evaluationStageExecutor)
+                : CompletableFuture.completedFuture(couponService.applicableCoupons(cart));
+        return list.thenApply(l -> {
+            Map<String, Object> resp = new HashMap<>();
+            resp.put("applicable_coupons", l);
+            return resp;
+        });
+    }
+
+    @PostMapping("/applicable-coupons/batch")
+    @Operation(summary = "Fetch applicable coupons for many carts against one catalog snapshot")
+    public ResponseEntity<Map<String, Object>> applicableBatch(@Valid @RequestBody CartBatchRequest request) {
+        try {
+            return ResponseEntity.ok(couponBatchService.applicableCoupons(request.getCarts()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/best-coupons")
+    @Operation(summary = "Fetch the k coupons with the largest discount for given cart, best first")
+    public Map<String, Object> best(@RequestParam(defaultValue = "1") int k, @Valid @RequestBody Map<String, CartDto> request) {
         CartDto cart = request.get("cart");
-        List<Map<String, Object>> list = couponService.applicableCoupons(cart);
         Map<String, Object> resp = new HashMap<>();
-        resp.put("applicable_coupons", list);
+        resp.put("best_coupons", couponService.bestCoupons(cart, k));
         return resp;
     }
 
     @PostMapping("/apply-coupon/{id}")
-    @Operation(summary = "Apply a specific coupon to the cart")
-    public Map<String, Object> apply(@PathVariable Long id, @Valid @RequestBody Map<String, CartDto> request) {
+    @Operation(summary = "Apply a specific coupon to the cart; counts against its redemption limits")
+    public ApplyCouponResponse apply(@PathVariable Long id, @RequestParam(name = "user_id", required = false) String userId,
+                                     @Valid @RequestBody Map<String, CartDto> request) {
         CartDto cart = request.get("cart");
-        return couponService.applyCoupon(id, cart);
+        return couponService.applyCoupon(id, cart, userId);
+    }
+
+    @PostMapping("/apply-best-combination")
+    @Operation(summary = "Find the stackable combination of coupons with the largest total discount")
+    public Map<String, Object> applyBestCombination(@RequestParam(name = "budget_ms", required = false) Long budgetMillis,
+                                                    @Valid @RequestBody Map<String, CartDto> request) {
+        CartDto cart = request.get("cart");
+        return couponStackingSolver.bestCombination(cart, budgetMillis);
+    }
+
+    @PostMapping("/cart-sessions")
+    @Operation(summary = "Start a cart session, optionally from a cart with one line per product")
+    public ResponseEntity<Map<String, Object>> createSession(@Valid @RequestBody(required = false) CartDto cart) {
+        try {
+            Map<String, Object> session = cartSessionService.create(cart);
+            return ResponseEntity.created(URI.create("/api/cart-sessions/" + session.get("session_id"))).body(session);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
-}
 
+    @GetMapping("/cart-sessions/{id}")
+    @Operation(summary = "Get a cart session's cart and applicable coupons")
+    public Map<String, Object> getSession(@PathVariable String id) { return cartSessionService.get(id); }
 
+    @PatchMapping("/cart-sessions/{id}")
+    @Operation(summary = "Apply ADD / REMOVE / SET_QUANTITY deltas; only the coupons they affect are re-evaluated")
+    public ResponseEntity<Map<String, Object>> updateSession(@PathVariable String id,
+                                                             @Valid @RequestBody CartSessionDtos.DeltaRequest req) {
+        try {
+            return ResponseEntity.ok(cartSessionService.update(id, req.getDeltas()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/cart-sessions/{id}")
+    @Operation(summary = "End a cart session")
+    public void deleteSession(@PathVariable String id) { cartSessionService.delete(id); }
+}
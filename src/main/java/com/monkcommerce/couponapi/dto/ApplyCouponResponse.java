@@ -0,0 +1,12 @@
+package com.monkcommerce.couponapi.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/** Response of apply-coupon; field names are the JSON names. */
+public record ApplyCouponResponse(UpdatedCart updated_cart) {
+
+    public record UpdatedCart(List<Item> items, BigDecimal total_price, BigDecimal total_discount, BigDecimal final_price) { }
+
+    public record Item(Long product_id, int quantity, BigDecimal price, BigDecimal total_discount) { }
+}
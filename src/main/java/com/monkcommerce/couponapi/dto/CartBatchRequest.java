@@ -0,0 +1,15 @@
+package com.monkcommerce.couponapi.dto;
+
+import jakarta.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CartBatchRequest {
+
+    // Carts are validated one by one by CouponBatchService, so one bad cart does not fail the batch.
+    @NotNull
+    private List<CartDto> carts = new ArrayList<>();
+
+    public List<CartDto> getCarts() { return carts; }
+    public void setCarts(List<CartDto> carts) { this.carts = carts; }
+}
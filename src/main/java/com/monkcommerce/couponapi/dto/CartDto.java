@@ -1,5 +1,6 @@
 package com.monkcommerce.couponapi.dto;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
@@ -10,6 +11,7 @@ import java.util.List;
 public class CartDto {
 
     @NotEmpty
+    @Valid
     private List<CartItemDto> items = new ArrayList<>();
 
     public List<CartItemDto> getItems() {
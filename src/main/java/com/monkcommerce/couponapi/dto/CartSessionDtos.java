@@ -0,0 +1,44 @@
+package com.monkcommerce.couponapi.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.util.List;
+
+public class CartSessionDtos {
+
+    public enum Op { ADD, REMOVE, SET_QUANTITY }
+
+    public static class Delta {
+        @NotNull
+        private Op op;
+        @NotNull
+        private Long product_id;
+        // ADD: units to add (at least 1). SET_QUANTITY: the new quantity; 0 removes the line.
+        @Min(0)
+        private Integer quantity;
+        // ADD: unit price; required when the product is not in the cart yet, otherwise replaces it.
+        @Min(0)
+        private BigDecimal price;
+
+        public Op getOp() { return op; }
+        public void setOp(Op op) { this.op = op; }
+        public Long getProduct_id() { return product_id; }
+        public void setProduct_id(Long product_id) { this.product_id = product_id; }
+        public Integer getQuantity() { return quantity; }
+        public void setQuantity(Integer quantity) { this.quantity = quantity; }
+        public BigDecimal getPrice() { return price; }
+        public void setPrice(BigDecimal price) { this.price = price; }
+    }
+
+    public static class DeltaRequest {
+        @NotEmpty
+        @Valid
+        private List<Delta> deltas;
+
+        public List<Delta> getDeltas() { return deltas; }
+        public void setDeltas(List<Delta> deltas) { this.deltas = deltas; }
+    }
+}
@@ -1,6 +1,7 @@
 package com.monkcommerce.couponapi.dto;
 
 import com.monkcommerce.couponapi.model.CouponType;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -16,7 +17,10 @@ public class CouponDtos {
         @NotBlank
         private String name;
         @NotNull
+        @Valid
         private Details details;
+        // Optional: coupon is valid from this date (inclusive). If null, valid immediately.
+        private LocalDate start_date;
         // Optional: coupon is valid through this date (inclusive). If null, no expiry.
         private LocalDate expiry_date;
 
@@ -26,6 +30,8 @@ public class CouponDtos {
         public void setName(String name) { this.name = name; }
         public Details getDetails() { return details; }
         public void setDetails(Details details) { this.details = details; }
+        public LocalDate getStart_date() { return start_date; }
+        public void setStart_date(LocalDate start_date) { this.start_date = start_date; }
         public LocalDate getExpiry_date() { return expiry_date; }
         public void setExpiry_date(LocalDate expiry_date) { this.expiry_date = expiry_date; }
     }
@@ -45,6 +51,15 @@ public class CouponDtos {
         private List<BuyGet> get_products;
         private Integer repetition_limit;
 
+        // Optional: an exclusive coupon is never stacked with other coupons.
+        private Boolean exclusive;
+
+        // Optional: caps on apply-coupon redemptions, in total and per user_id.
+        @Min(0)
+        private Integer max_redemptions;
+        @Min(0)
+        private Integer max_redemptions_per_user;
+
         public BigDecimal getThreshold() { return threshold; }
         public void setThreshold(BigDecimal threshold) { this.threshold = threshold; }
         public BigDecimal getDiscount() { return discount; }
@@ -57,6 +72,12 @@ public class CouponDtos {
         public void setGet_products(List<BuyGet> get_products) { this.get_products = get_products; }
         public Integer getRepetition_limit() { return repetition_limit; }
         public void setRepetition_limit(Integer repetition_limit) { this.repetition_limit = repetition_limit; }
+        public Boolean getExclusive() { return exclusive; }
+        public void setExclusive(Boolean exclusive) { this.exclusive = exclusive; }
+        public Integer getMax_redemptions() { return max_redemptions; }
+        public void setMax_redemptions(Integer max_redemptions) { this.max_redemptions = max_redemptions; }
+        public Integer getMax_redemptions_per_user() { return max_redemptions_per_user; }
+        public void setMax_redemptions_per_user(Integer max_redemptions_per_user) { this.max_redemptions_per_user = max_redemptions_per_user; }
     }
 
     public static class BuyGet {
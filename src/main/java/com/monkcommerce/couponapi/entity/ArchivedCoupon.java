@@ -0,0 +1,59 @@
+package com.monkcommerce.couponapi.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.monkcommerce.couponapi.model.CouponType;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A coupon moved out of {@code coupon} some time after it expired. The row keeps the coupon's id, so
+ * a restore brings it back under the same id and its redemptions still count. The rule is kept as
+ * one JSON document since archived coupons are never evaluated.
+ */
+@Entity
+@Table(name = "coupon_archive")
+public class ArchivedCoupon {
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false)
+    private CouponType type;
+
+    @Column(name = "start_date")
+    private LocalDate startDate;
+
+    @Column(name = "expiry_date")
+    private LocalDate expiryDate;
+
+    @Lob
+    @Column(name = "details_json", nullable = false)
+    @JsonProperty("details")
+    @JsonRawValue
+    private String detailsJson;
+
+    @Column(name = "archived_at", nullable = false)
+    private Instant archivedAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public CouponType getType() { return type; }
+    public void setType(CouponType type) { this.type = type; }
+    public LocalDate getStartDate() { return startDate; }
+    public void setStartDate(LocalDate startDate) { this.startDate = startDate; }
+    public LocalDate getExpiryDate() { return expiryDate; }
+    public void setExpiryDate(LocalDate expiryDate) { this.expiryDate = expiryDate; }
+    public String getDetailsJson() { return detailsJson; }
+    public void setDetailsJson(String detailsJson) { this.detailsJson = detailsJson; }
+    public Instant getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(Instant archivedAt) { this.archivedAt = archivedAt; }
+}
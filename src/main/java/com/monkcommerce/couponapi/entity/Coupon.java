@@ -1,31 +1,96 @@
 package com.monkcommerce.couponapi.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.monkcommerce.couponapi.dto.CouponDtos;
 import com.monkcommerce.couponapi.model.CouponType;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * A coupon and its rule. Scalar rule fields live in {@code coupon_rule}, BxGy requirements in
+ * {@code coupon_buy} / {@code coupon_get}, so the database can filter by product, threshold and
+ * expiry. The API sees the rule as one {@code details} object.
+ */
 @Entity
-@Table(name = "coupon")
+@Table(name = "coupon", indexes = {
+        @Index(name = "idx_coupon_type", columnList = "type"),
+        @Index(name = "idx_coupon_expiry_date", columnList = "expiry_date")
+})
+@SecondaryTable(name = "coupon_rule", pkJoinColumns = @PrimaryKeyJoinColumn(name = "coupon_id"), indexes = {
+        @Index(name = "idx_coupon_rule_product_id", columnList = "product_id"),
+        @Index(name = "idx_coupon_rule_threshold", columnList = "threshold")
+})
 public class Coupon {
 
+    /** Ids handed out per read of {@code coupon_seq}. */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Pooled sequence rather than IDENTITY so Hibernate can batch inserts; one round trip hands out 50 ids.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_id")
+    @SequenceGenerator(name = "coupon_id", sequenceName = "coupon_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Column(nullable = false)
     private String name;
 
     @Enumerated(EnumType.STRING)
-    @Column(nullable = false)
+    @Column(name = "type", nullable = false)
     private CouponType type;
 
+    // Legacy JSON rule from before coupon_rule existed; only set on rows not migrated yet.
     @Lob
-    @Column(nullable = false)
+    @Column(name = "details_json")
+    @JsonIgnore
     private String detailsJson;
 
-    @Column
+    @Column(name = "start_date")
+    private LocalDate startDate; // inclusive: valid from this date
+
+    @Column(name = "expiry_date")
     private LocalDate expiryDate; // inclusive: valid through this date
 
+    @Column(table = "coupon_rule", name = "threshold", precision = 38, scale = 10)
+    private BigDecimal threshold;
+
+    @Column(table = "coupon_rule", name = "discount", precision = 38, scale = 10)
+    private BigDecimal discount;
+
+    @Column(table = "coupon_rule", name = "product_id")
+    private Long productId;
+
+    @Column(table = "coupon_rule", name = "repetition_limit")
+    private Integer repetitionLimit;
+
+    @Column(table = "coupon_rule", name = "exclusive")
+    private Boolean exclusive;
+
+    @Column(table = "coupon_rule", name = "max_redemptions")
+    private Integer maxRedemptions;
+
+    @Column(table = "coupon_rule", name = "max_redemptions_per_user")
+    private Integer maxRedemptionsPerUser;
+
+    @ElementCollection
+    @CollectionTable(name = "coupon_buy", joinColumns = @JoinColumn(name = "coupon_id"),
+            indexes = @Index(name = "idx_coupon_buy_product_id", columnList = "product_id"))
+    @OrderColumn(name = "position")
+    @Fetch(FetchMode.SUBSELECT)
+    private List<ProductQuantity> buyProducts = new ArrayList<>();
+
+    @ElementCollection
+    @CollectionTable(name = "coupon_get", joinColumns = @JoinColumn(name = "coupon_id"),
+            indexes = @Index(name = "idx_coupon_get_product_id", columnList = "product_id"))
+    @OrderColumn(name = "position")
+    @Fetch(FetchMode.SUBSELECT)
+    private List<ProductQuantity> getProducts = new ArrayList<>();
+
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
     public String getName() { return name; }
@@ -34,6 +99,59 @@ public class Coupon {
     public void setType(CouponType type) { this.type = type; }
     public String getDetailsJson() { return detailsJson; }
     public void setDetailsJson(String detailsJson) { this.detailsJson = detailsJson; }
+    public LocalDate getStartDate() { return startDate; }
+    public void setStartDate(LocalDate startDate) { this.startDate = startDate; }
     public LocalDate getExpiryDate() { return expiryDate; }
     public void setExpiryDate(LocalDate expiryDate) { this.expiryDate = expiryDate; }
+
+    public CouponDtos.Details getDetails() {
+        CouponDtos.Details d = new CouponDtos.Details();
+        d.setThreshold(plain(threshold));
+        d.setDiscount(plain(discount));
+        d.setProduct_id(productId);
+        d.setBuy_products(toBuyGets(buyProducts));
+        d.setGet_products(toBuyGets(getProducts));
+        d.setRepetition_limit(repetitionLimit);
+        d.setExclusive(exclusive);
+        d.setMax_redemptions(maxRedemptions);
+        d.setMax_redemptions_per_user(maxRedemptionsPerUser);
+        return d;
+    }
+
+    public void setDetails(CouponDtos.Details d) {
+        threshold = d.getThreshold();
+        discount = d.getDiscount();
+        productId = d.getProduct_id();
+        repetitionLimit = d.getRepetition_limit();
+        exclusive = d.getExclusive();
+        maxRedemptions = d.getMax_redemptions();
+        maxRedemptionsPerUser = d.getMax_redemptions_per_user();
+        replace(buyProducts, d.getBuy_products());
+        replace(getProducts, d.getGet_products());
+    }
+
+    // Columns hold 10 decimals; drop the padding so 10 reads back as 10, not 10.0000000000.
+    private static BigDecimal plain(BigDecimal value) {
+        if (value == null) return null;
+        BigDecimal stripped = value.stripTrailingZeros();
+        return stripped.scale() < 0 ? stripped.setScale(0) : stripped;
+    }
+
+    private static List<CouponDtos.BuyGet> toBuyGets(List<ProductQuantity> rows) {
+        if (rows.isEmpty()) return null;
+        List<CouponDtos.BuyGet> list = new ArrayList<>(rows.size());
+        for (ProductQuantity row : rows) {
+            CouponDtos.BuyGet bg = new CouponDtos.BuyGet();
+            bg.setProduct_id(row.getProductId());
+            bg.setQuantity(row.getQuantity());
+            list.add(bg);
+        }
+        return list;
+    }
+
+    private static void replace(List<ProductQuantity> rows, List<CouponDtos.BuyGet> values) {
+        rows.clear();
+        if (values == null) return;
+        for (CouponDtos.BuyGet bg : values) rows.add(new ProductQuantity(bg.getProduct_id(), bg.getQuantity()));
+    }
 }
@@ -0,0 +1,53 @@
+package com.monkcommerce.couponapi.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * One committed write to a coupon, appended in the writer's transaction. Other nodes poll these and
+ * re-read just the coupons named here. Entries only say which coupon changed, so applying one twice
+ * is harmless.
+ */
+@Entity
+@Table(name = "coupon_change", indexes = {
+        @Index(name = "idx_coupon_change_changed_at", columnList = "changed_at")
+})
+public class CouponChange {
+
+    public enum Operation { SAVED, DELETED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_change_id")
+    @SequenceGenerator(name = "coupon_change_id", sequenceName = "coupon_change_seq", allocationSize = 50)
+    private Long seq;
+
+    @Column(name = "coupon_id", nullable = false)
+    private Long couponId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Operation operation;
+
+    // Writing node, so a node can skip changes it already published locally.
+    @Column(name = "node_id", nullable = false)
+    private String nodeId;
+
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+
+    public CouponChange() { }
+
+    public CouponChange(Long couponId, Operation operation, String nodeId, Instant changedAt) {
+        this.couponId = couponId;
+        this.operation = operation;
+        this.nodeId = nodeId;
+        this.changedAt = changedAt;
+    }
+
+    public Long getSeq() { return seq; }
+    public Long getCouponId() { return couponId; }
+    public Operation getOperation() { return operation; }
+    public String getNodeId() { return nodeId; }
+    public Instant getChangedAt() { return changedAt; }
+}
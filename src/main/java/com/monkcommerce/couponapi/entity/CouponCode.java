@@ -0,0 +1,45 @@
+package com.monkcommerce.couponapi.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/** A single-use code for a coupon. Redeemed once {@code redeemedAt} is set. */
+@Entity
+@Table(name = "coupon_code", indexes = {
+        @Index(name = "idx_coupon_code_code", columnList = "code", unique = true),
+        @Index(name = "idx_coupon_code_coupon_id", columnList = "coupon_id")
+})
+public class CouponCode {
+
+    // Codes are created by the million, so hand out ids 1000 per sequence round trip.
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_code_id")
+    @SequenceGenerator(name = "coupon_code_id", sequenceName = "coupon_code_seq", allocationSize = 1000)
+    private Long id;
+
+    @Column(nullable = false, length = 32)
+    private String code;
+
+    @Column(name = "coupon_id", nullable = false)
+    private Long couponId;
+
+    @Column(name = "redeemed_at")
+    private Instant redeemedAt;
+
+    public CouponCode() { }
+
+    public CouponCode(String code, Long couponId) {
+        this.code = code;
+        this.couponId = couponId;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getCode() { return code; }
+    public void setCode(String code) { this.code = code; }
+    public Long getCouponId() { return couponId; }
+    public void setCouponId(Long couponId) { this.couponId = couponId; }
+    public Instant getRedeemedAt() { return redeemedAt; }
+    public void setRedeemedAt(Instant redeemedAt) { this.redeemedAt = redeemedAt; }
+}
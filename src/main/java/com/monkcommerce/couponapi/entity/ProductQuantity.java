@@ -0,0 +1,27 @@
+package com.monkcommerce.couponapi.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+/** One buy or get requirement of a BxGy coupon. */
+@Embeddable
+public class ProductQuantity {
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(nullable = false)
+    private int quantity;
+
+    public ProductQuantity() { }
+
+    public ProductQuantity(Long productId, int quantity) {
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public Long getProductId() { return productId; }
+    public void setProductId(Long productId) { this.productId = productId; }
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+}
@@ -0,0 +1,42 @@
+package com.monkcommerce.couponapi.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/** One apply-coupon call that counted against a coupon's redemption limits. */
+@Entity
+@Table(name = "coupon_redemption", indexes = {
+        @Index(name = "idx_coupon_redemption_coupon_user", columnList = "coupon_id, user_id")
+})
+public class Redemption {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_redemption_id")
+    @SequenceGenerator(name = "coupon_redemption_id", sequenceName = "coupon_redemption_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "coupon_id", nullable = false)
+    private Long couponId;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(precision = 38, scale = 10)
+    private BigDecimal discount;
+
+    @Column(name = "redeemed_at", nullable = false)
+    private Instant redeemedAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getCouponId() { return couponId; }
+    public void setCouponId(Long couponId) { this.couponId = couponId; }
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+    public BigDecimal getDiscount() { return discount; }
+    public void setDiscount(BigDecimal discount) { this.discount = discount; }
+    public Instant getRedeemedAt() { return redeemedAt; }
+    public void setRedeemedAt(Instant redeemedAt) { this.redeemedAt = redeemedAt; }
+}
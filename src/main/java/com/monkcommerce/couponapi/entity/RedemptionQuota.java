@@ -0,0 +1,56 @@
+package com.monkcommerce.couponapi.entity;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Redemptions claimed against one limit, shared by every node. The coupon-wide row (empty
+ * {@code user_id}) counts units leased to nodes in blocks; a per-user row counts that user's
+ * reservations. Rows only grow through conditional updates, so the claimed count never passes the
+ * limit the update was made against.
+ */
+@Entity
+@Table(name = "coupon_redemption_quota")
+@IdClass(RedemptionQuota.Key.class)
+public class RedemptionQuota {
+
+    /** {@code user_id} of the coupon-wide row. */
+    public static final String ALL_USERS = "";
+
+    @Id
+    @Column(name = "coupon_id")
+    private Long couponId;
+
+    @Id
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(nullable = false)
+    private long claimed;
+
+    public Long getCouponId() { return couponId; }
+    public String getUserId() { return userId; }
+    public long getClaimed() { return claimed; }
+
+    public static class Key implements Serializable {
+        private Long couponId;
+        private String userId;
+
+        public Key() { }
+
+        public Key(Long couponId, String userId) {
+            this.couponId = couponId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && Objects.equals(couponId, k.couponId) && Objects.equals(userId, k.userId);
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(couponId, userId); }
+    }
+}
@@ -0,0 +1,110 @@
+package com.monkcommerce.couponapi.metrics;
+
+import com.monkcommerce.couponapi.model.CouponType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the evaluation hot path, all registered up front so recording is a field read and an
+ * atomic add. Per-coupon evaluator timers cost two clock reads per candidate and can be turned off
+ * with {@code coupon.metrics.per-coupon-timers}; everything else is recorded once per request.
+ */
+@Component
+public class CouponMetrics {
+
+    private final Timer applicable;
+    private final Timer apply;
+    private final Timer detailsParse;
+    private final Timer catalogLoad;
+    private final Map<CouponType, Timer> evaluate = new EnumMap<>(CouponType.class);
+    private final Counter scanned;
+    private final Counter matched;
+    private final DistributionSummary cartLines;
+    private final Timer archiveRun;
+    private final DistributionSummary archived;
+    private final Counter restored;
+    private final boolean perCouponTimers;
+
+    public CouponMetrics(MeterRegistry registry, @Value("${coupon.metrics.per-coupon-timers:true}") boolean perCouponTimers) {
+        this.applicable = Timer.builder("coupon.applicable")
+                .description("Time to find applicable coupons for one cart")
+                .publishPercentileHistogram().register(registry);
+        this.apply = Timer.builder("coupon.apply")
+                .description("Time to apply one coupon to a cart")
+                .publishPercentileHistogram().register(registry);
+        this.detailsParse = Timer.builder("coupon.details.parse")
+                .description("Time to parse a legacy details_json rule")
+                .register(registry);
+        this.catalogLoad = Timer.builder("coupon.catalog.load")
+                .description("Time to load and compile the whole catalog from the database")
+                .register(registry);
+        for (CouponType type : CouponType.values()) {
+            evaluate.put(type, Timer.builder("coupon.evaluate")
+                    .description("Time to evaluate one coupon against a cart")
+                    .tag("type", type.name())
+                    .register(registry));
+        }
+        this.scanned = Counter.builder("coupon.candidates.scanned")
+                .description("Coupons evaluated against a cart")
+                .register(registry);
+        this.matched = Counter.builder("coupon.candidates.matched")
+                .description("Evaluated coupons that gave a discount")
+                .register(registry);
+        this.cartLines = DistributionSummary.builder("coupon.cart.lines")
+                .description("Line items per evaluated cart")
+                .baseUnit("lines")
+                .publishPercentileHistogram().register(registry);
+        this.archiveRun = Timer.builder("coupon.archive.run")
+                .description("Time for one run of the expired-coupon archival job")
+                .register(registry);
+        this.archived = DistributionSummary.builder("coupon.archive.moved")
+                .description("Coupons moved to coupon_archive per archival run")
+                .baseUnit("coupons")
+                .register(registry);
+        this.restored = Counter.builder("coupon.archive.restored")
+                .description("Coupons restored from coupon_archive")
+                .register(registry);
+        this.perCouponTimers = perCouponTimers;
+    }
+
+    /** Meters backed by a private registry and no per-coupon timers, for code built outside Spring. */
+    public static CouponMetrics noop() {
+        return new CouponMetrics(new SimpleMeterRegistry(), false);
+    }
+
+    public boolean perCouponTimers() { return perCouponTimers; }
+
+    public void applicable(long nanos) { applicable.record(nanos, TimeUnit.NANOSECONDS); }
+
+    public void apply(long nanos) { apply.record(nanos, TimeUnit.NANOSECONDS); }
+
+    public void detailsParse(long nanos) { detailsParse.record(nanos, TimeUnit.NANOSECONDS); }
+
+    public void catalogLoad(long nanos) { catalogLoad.record(nanos, TimeUnit.NANOSECONDS); }
+
+    public void evaluated(CouponType type, long nanos) { evaluate.get(type).record(nanos, TimeUnit.NANOSECONDS); }
+
+    public void candidates(int scannedCount, int matchedCount) {
+        scanned.increment(scannedCount);
+        matched.increment(matchedCount);
+    }
+
+    public void cartLines(int lines) { cartLines.record(lines); }
+
+    public void archiveRun(int moved, long nanos) {
+        archived.record(moved);
+        archiveRun.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void restored() { restored.increment(); }
+}
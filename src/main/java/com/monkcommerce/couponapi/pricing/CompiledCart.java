@@ -0,0 +1,90 @@
+package com.monkcommerce.couponapi.pricing;
+
+import com.monkcommerce.couponapi.dto.CartDto;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A cart compiled once per request for coupon matching: its distinct product ids sorted in a
+ * {@code long[]}, with parallel arrays giving each product's first and last line. Evaluators find a
+ * product by binary search and read the line directly, so matching a coupon allocates nothing.
+ *
+ * <p>Product-wise coupons read the first line for a product and BxGy coupons the last one, as the
+ * evaluators always have when a cart repeats a product.
+ */
+public final class CompiledCart {
+
+    private final List<CartDto.CartItemDto> items;
+    private final long[] productIds;
+    private final int[] firstLine;
+    private final int[] lastLine;
+    private final int[] lastQuantity;
+    private final BigDecimal total;
+
+    private CompiledCart(List<CartDto.CartItemDto> items, long[] productIds, int[] firstLine, int[] lastLine,
+                         int[] lastQuantity, BigDecimal total) {
+        this.items = items;
+        this.productIds = productIds;
+        this.firstLine = firstLine;
+        this.lastLine = lastLine;
+        this.lastQuantity = lastQuantity;
+        this.total = total;
+    }
+
+    public static CompiledCart of(CartDto cart) {
+        List<CartDto.CartItemDto> items = cart.getItems();
+        int n = items.size();
+        long[] ids = new long[n];
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < n; i++) {
+            CartDto.CartItemDto item = items.get(i);
+            ids[i] = item.getProduct_id();
+            total = total.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) sorted[distinct++] = sorted[i];
+        }
+        long[] productIds = distinct == n ? sorted : Arrays.copyOf(sorted, distinct);
+        int[] firstLine = new int[distinct];
+        int[] lastLine = new int[distinct];
+        int[] lastQuantity = new int[distinct];
+        Arrays.fill(firstLine, -1);
+        for (int i = 0; i < n; i++) {
+            int slot = Arrays.binarySearch(productIds, ids[i]);
+            if (firstLine[slot] < 0) firstLine[slot] = i;
+            lastLine[slot] = i;
+            lastQuantity[slot] = items.get(i).getQuantity();
+        }
+        return new CompiledCart(items, productIds, firstLine, lastLine, lastQuantity, total);
+    }
+
+    /** Sum of price times quantity over all lines, with the same value and scale as summing them in order. */
+    public BigDecimal total() { return total; }
+
+    public List<CartDto.CartItemDto> items() { return items; }
+
+    /** Distinct product ids, ascending. Shared; do not modify. */
+    public long[] productIds() { return productIds; }
+
+    /** Slot of {@code productId} in {@link #productIds()}, or a negative value if the cart lacks it. */
+    public int find(long productId) { return Arrays.binarySearch(productIds, productId); }
+
+    public CartDto.CartItemDto firstLine(int slot) { return items.get(firstLine[slot]); }
+
+    public CartDto.CartItemDto lastLine(int slot) { return items.get(lastLine[slot]); }
+
+    int firstLineIndex(int slot) { return firstLine[slot]; }
+
+    int lastLineIndex(int slot) { return lastLine[slot]; }
+
+    /** Quantity on the product's last line, the amount BxGy buy requirements count against. */
+    public int lastQuantity(int slot) { return lastQuantity[slot]; }
+
+    /** A fresh copy of {@link #lastQuantity} for every slot, for callers that consume quantities. */
+    public int[] lastQuantities() { return lastQuantity.clone(); }
+}
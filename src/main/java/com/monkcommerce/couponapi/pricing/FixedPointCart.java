@@ -0,0 +1,176 @@
+package com.monkcommerce.couponapi.pricing;
+
+import com.monkcommerce.couponapi.catalog.CompiledCoupon;
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * A cart with every price scaled once to long minor units ({@code 10^-scale}), so coupon
+ * discounts can be computed with exact integer math. Results match the BigDecimal evaluators
+ * in {@code CouponService} in both value and scale, including HALF_UP rounding to 2 places.
+ *
+ * <p>Evaluators return {@link #NONE} where the BigDecimal path bails out with {@code BigDecimal.ZERO},
+ * since a computed zero such as {@code 0.00} serializes differently.
+ *
+ * <p>Any step that would overflow, or a discount with no {@link FixedPointRate}, throws
+ * {@link ArithmeticException}; callers fall back to the BigDecimal path for that coupon.
+ */
+public final class FixedPointCart {
+
+    public static final long NONE = Long.MIN_VALUE;
+    static final int MAX_SCALE = 18;
+    private static final long[] POW10 = new long[MAX_SCALE + 1];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final CompiledCart cart;
+    private final int scale;
+    // Per cart line, indexed like CartDto.getItems().
+    private final int[] quantities;
+    private final long[] unitPrices;
+    private final int[] priceScales;
+    private final long total;
+    private final int totalScale;
+    private BigDecimal totalDecimal;
+
+    private FixedPointCart(CompiledCart cart, int scale, int[] quantities, long[] unitPrices, int[] priceScales,
+                           long total, int totalScale) {
+        this.cart = cart;
+        this.scale = scale;
+        this.quantities = quantities;
+        this.unitPrices = unitPrices;
+        this.priceScales = priceScales;
+        this.total = total;
+        this.totalScale = totalScale;
+    }
+
+    /** Compiles the cart, or returns {@code null} if its prices cannot be held as longs. */
+    public static FixedPointCart of(CartDto cart) {
+        return of(CompiledCart.of(cart));
+    }
+
+    /** Same as {@link #of(CartDto)}, reusing the product lookup of an already compiled cart. */
+    public static FixedPointCart of(CompiledCart cart) {
+        List<CartDto.CartItemDto> items = cart.items();
+        int n = items.size();
+        int maxScale = 0;
+        for (CartDto.CartItemDto item : items) {
+            int s = item.getPrice().scale();
+            if (s < 0 || s > MAX_SCALE) return null;
+            maxScale = Math.max(maxScale, s);
+        }
+        int scale = Math.max(2, maxScale);
+        int[] quantities = new int[n];
+        long[] unitPrices = new long[n];
+        int[] priceScales = new int[n];
+        long total = 0;
+        try {
+            for (int i = 0; i < n; i++) {
+                CartDto.CartItemDto item = items.get(i);
+                quantities[i] = item.getQuantity();
+                unitPrices[i] = item.getPrice().movePointRight(scale).longValueExact();
+                priceScales[i] = item.getPrice().scale();
+                total = Math.addExact(total, Math.multiplyExact(unitPrices[i], (long) quantities[i]));
+            }
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        return new FixedPointCart(cart, scale, quantities, unitPrices, priceScales, total, maxScale);
+    }
+
+    public CompiledCart cart() { return cart; }
+
+    public BigDecimal total() {
+        if (totalDecimal == null) {
+            totalDecimal = BigDecimal.valueOf(total, scale).setScale(totalScale, RoundingMode.UNNECESSARY);
+        }
+        return totalDecimal;
+    }
+
+    /** Discount in cents (scale 2). */
+    public long cartWise(CompiledCoupon c) {
+        if (c.threshold() == null || c.discount() == null) return NONE;
+        if (total().compareTo(c.threshold()) <= 0) return NONE;
+        return percentOf(total, c);
+    }
+
+    /** Discount in cents (scale 2). */
+    public long productWise(CompiledCoupon c) {
+        if (c.productId() == null || c.discount() == null) return NONE;
+        int slot = cart.find(c.productId());
+        if (slot < 0) return NONE;
+        int line = cart.firstLineIndex(slot);
+        return percentOf(Math.multiplyExact(unitPrices[line], (long) quantities[line]), c);
+    }
+
+    /** Value of the free items in units of {@code 10^-scale}. */
+    public long bxGy(CompiledCoupon c) {
+        if (c.buyProducts() == null || c.getProducts() == null) return NONE;
+        int repetitions = repetitions(c);
+        if (c.repetitionLimit() != null) repetitions = Math.min(repetitions, c.repetitionLimit());
+        if (repetitions <= 0) return NONE;
+        long freeValue = 0;
+        for (CouponDtos.BuyGet get : c.getProducts()) {
+            int slot = cart.find(get.getProduct_id());
+            if (slot >= 0) {
+                int line = cart.lastLineIndex(slot);
+                int freeQty = get.getQuantity() * repetitions;
+                freeValue = Math.addExact(freeValue, Math.multiplyExact(unitPrices[line], (long) freeQty));
+            }
+        }
+        return freeValue;
+    }
+
+    /** Converts a result of {@link #cartWise}, {@link #productWise} or {@link #bxGy} to its BigDecimal form. */
+    public BigDecimal toDecimal(CompiledCoupon c, long units) {
+        if (units == NONE) return BigDecimal.ZERO;
+        return switch (c.type()) {
+            case CART_WISE, PRODUCT_WISE -> BigDecimal.valueOf(units, 2);
+            case BXGY -> BigDecimal.valueOf(units, scale).setScale(bxGyScale(c), RoundingMode.UNNECESSARY);
+        };
+    }
+
+    private int repetitions(CompiledCoupon c) {
+        if (c.buyProducts().isEmpty()) return 0;
+        int times = Integer.MAX_VALUE;
+        for (CouponDtos.BuyGet buy : c.buyProducts()) {
+            int slot = cart.find(buy.getProduct_id());
+            int available = slot < 0 ? 0 : cart.lastQuantity(slot);
+            times = Math.min(times, available / buy.getQuantity());
+        }
+        return times;
+    }
+
+    // BigDecimal sums of price * qty carry the largest price scale involved (ZERO has scale 0).
+    private int bxGyScale(CompiledCoupon c) {
+        int s = 0;
+        for (CouponDtos.BuyGet get : c.getProducts()) {
+            int slot = cart.find(get.getProduct_id());
+            if (slot >= 0) s = Math.max(s, priceScales[cart.lastLineIndex(slot)]);
+        }
+        return s;
+    }
+
+    // amount (10^-scale) * discount% rounded HALF_UP to cents.
+    private long percentOf(long amount, CompiledCoupon c) {
+        FixedPointRate rate = c.fixedPointRate();
+        if (rate == null) throw new ArithmeticException("Discount does not fit a long");
+        return divideHalfUp(Math.multiplyExact(amount, rate.unscaled()), scale + rate.scale());
+    }
+
+    private static long divideHalfUp(long n, int exponent) {
+        if (exponent > MAX_SCALE) throw new ArithmeticException("Scale out of range");
+        long d = POW10[exponent];
+        long q = n / d;
+        long r = Math.abs(n % d);
+        if (r >= d - r) q += Long.signum(n);
+        return q;
+    }
+}
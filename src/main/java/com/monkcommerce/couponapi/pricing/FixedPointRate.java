@@ -0,0 +1,15 @@
+package com.monkcommerce.couponapi.pricing;
+
+import java.math.BigDecimal;
+
+/** A percentage held as {@code unscaled * 10^-scale}, ready for long arithmetic. */
+public record FixedPointRate(long unscaled, int scale) {
+
+    /** Returns {@code null} when the value does not fit a long with a non-negative scale. */
+    public static FixedPointRate of(BigDecimal value) {
+        if (value == null) return null;
+        BigDecimal v = value.scale() < 0 ? value.setScale(0) : value;
+        if (v.scale() > FixedPointCart.MAX_SCALE || v.precision() > 18) return null;
+        return new FixedPointRate(v.unscaledValue().longValue(), v.scale());
+    }
+}
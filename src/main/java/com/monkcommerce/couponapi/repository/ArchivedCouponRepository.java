@@ -0,0 +1,16 @@
+package com.monkcommerce.couponapi.repository;
+
+import com.monkcommerce.couponapi.entity.ArchivedCoupon;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ArchivedCouponRepository extends JpaRepository<ArchivedCoupon, Long> {
+
+    /** One keyset page of archived coupons with id greater than {@code afterId}, in id order. */
+    @Query("select a from ArchivedCoupon a where a.id > :afterId order by a.id")
+    List<ArchivedCoupon> findPage(@Param("afterId") long afterId, Pageable page);
+}
@@ -0,0 +1,21 @@
+package com.monkcommerce.couponapi.repository;
+
+import com.monkcommerce.couponapi.entity.CouponChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface CouponChangeRepository extends JpaRepository<CouponChange, Long> {
+
+    /** Changes written by other nodes at or after {@code since}, oldest first. */
+    @Query("select c from CouponChange c where c.changedAt >= :since and c.nodeId <> :nodeId order by c.changedAt, c.seq")
+    List<CouponChange> findSince(@Param("since") Instant since, @Param("nodeId") String nodeId);
+
+    @Modifying
+    @Query("delete from CouponChange c where c.changedAt < :before")
+    int deleteOlderThan(@Param("before") Instant before);
+}
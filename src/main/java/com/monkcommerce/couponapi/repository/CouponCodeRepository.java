@@ -0,0 +1,51 @@
+package com.monkcommerce.couponapi.repository;
+
+import com.monkcommerce.couponapi.entity.CouponCode;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+
+public interface CouponCodeRepository extends JpaRepository<CouponCode, Long> {
+
+    /** What the in-memory code index keeps per code. */
+    record CodeRow(String code, Long couponId, boolean redeemed) { }
+
+    String ROW = "select new com.monkcommerce.couponapi.repository.CouponCodeRepository$CodeRow("
+            + "c.code, c.couponId, case when c.redeemedAt is null then false else true end) from CouponCode c";
+
+    /** Every code, for rebuilding the index; must be consumed inside a transaction. */
+    @Query(ROW)
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<CodeRow> streamAll();
+
+    /** One coupon's codes in creation order; must be consumed inside a transaction. */
+    @Query(ROW + " where c.couponId = :couponId order by c.id")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<CodeRow> streamByCouponId(@Param("couponId") Long couponId);
+
+    @Query(ROW + " where c.code = :code")
+    Optional<CodeRow> findRow(@Param("code") String code);
+
+    /** Marks the code redeemed unless it already is; 1 if this call redeemed it, else 0. */
+    @Modifying
+    @Query("update CouponCode c set c.redeemedAt = :at where c.code = :code and c.redeemedAt is null")
+    int redeem(@Param("code") String code, @Param("at") Instant at);
+
+    @Modifying
+    @Query("delete from CouponCode c where c.couponId = :couponId")
+    int deleteByCouponId(@Param("couponId") Long couponId);
+
+    /** Undoes {@link #redeem} when the checkout it was for failed. */
+    @Modifying
+    @Query("update CouponCode c set c.redeemedAt = null where c.code = :code and c.redeemedAt = :at")
+    int unredeem(@Param("code") String code, @Param("at") Instant at);
+}
@@ -1,9 +1,56 @@
 package com.monkcommerce.couponapi.repository;
 
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.model.CouponType;
 
-public interface CouponRepository extends JpaRepository<Coupon, Long> { }
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
 
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
+public interface CouponRepository extends JpaRepository<Coupon, Long> {
+
+    // Null filters are ignored. activeOn keeps coupons valid on that date; expiredBefore keeps ones that ended earlier.
+    String FILTERED = "select c from Coupon c where c.id > :afterId"
+            + " and (:type is null or c.type = :type)"
+            + " and (:activeOn is null or ((c.startDate is null or c.startDate <= :activeOn)"
+            + "     and (c.expiryDate is null or c.expiryDate >= :activeOn)))"
+            + " and (:expiredBefore is null or c.expiryDate < :expiredBefore)"
+            + " order by c.id";
+
+    /** One keyset page: coupons with id greater than {@code afterId}, in id order, sized by {@code page}. */
+    @Query(FILTERED)
+    List<Coupon> findPage(@Param("afterId") long afterId, @Param("type") CouponType type,
+                          @Param("activeOn") LocalDate activeOn, @Param("expiredBefore") LocalDate expiredBefore,
+                          Pageable page);
+
+    /** Same filters as {@link #findPage}, unbounded; must be consumed inside a transaction. */
+    @Query(FILTERED)
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Coupon> streamFiltered(@Param("afterId") long afterId, @Param("type") CouponType type,
+                                  @Param("activeOn") LocalDate activeOn, @Param("expiredBefore") LocalDate expiredBefore);
+
+    /** Rows still carrying the legacy JSON rule, one keyset page at a time. */
+    @Query("select c from Coupon c where c.detailsJson is not null and c.id > :afterId order by c.id")
+    List<Coupon> findLegacyPage(@Param("afterId") long afterId, Pageable page);
+
+    /** Ids of coupons that expired before {@code cutoff}, one keyset page at a time, via the expiry_date index. */
+    @Query("select c.id from Coupon c where c.expiryDate < :cutoff and c.id > :afterId order by c.id")
+    List<Long> findExpiredIds(@Param("cutoff") LocalDate cutoff, @Param("afterId") long afterId, Pageable page);
+
+    /** Inserts the coupon row under an existing id, bypassing coupon_seq; the rule is saved through the entity after. */
+    @Modifying
+    @Query(value = "insert into coupon (id, name, type, start_date, expiry_date) values (:id, :name, :type, :startDate, :expiryDate)",
+            nativeQuery = true)
+    void insertWithId(@Param("id") long id, @Param("name") String name, @Param("type") String type,
+                      @Param("startDate") LocalDate startDate, @Param("expiryDate") LocalDate expiryDate);
+}
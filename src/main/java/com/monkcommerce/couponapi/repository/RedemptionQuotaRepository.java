@@ -0,0 +1,33 @@
+package com.monkcommerce.couponapi.repository;
+
+import com.monkcommerce.couponapi.entity.RedemptionQuota;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface RedemptionQuotaRepository extends JpaRepository<RedemptionQuota, RedemptionQuota.Key> {
+
+    @Query("select q.claimed from RedemptionQuota q where q.couponId = :couponId and q.userId = :userId")
+    Optional<Long> findClaimed(@Param("couponId") Long couponId, @Param("userId") String userId);
+
+    /** Creates the row; fails with a constraint violation if another node created it first. */
+    @Modifying
+    @Query(value = "insert into coupon_redemption_quota (coupon_id, user_id, claimed) values (:couponId, :userId, :claimed)",
+            nativeQuery = true)
+    void insert(@Param("couponId") Long couponId, @Param("userId") String userId, @Param("claimed") long claimed);
+
+    /** Adds {@code units} if the total stays within {@code limit}; 1 if it did, else 0. */
+    @Modifying
+    @Query("update RedemptionQuota q set q.claimed = q.claimed + :units "
+            + "where q.couponId = :couponId and q.userId = :userId and q.claimed + :units <= :limit")
+    int claim(@Param("couponId") Long couponId, @Param("userId") String userId,
+              @Param("units") long units, @Param("limit") long limit);
+
+    /** Returns units that were claimed but not redeemed. */
+    @Modifying
+    @Query("update RedemptionQuota q set q.claimed = q.claimed - :units where q.couponId = :couponId and q.userId = :userId")
+    int giveBack(@Param("couponId") Long couponId, @Param("userId") String userId, @Param("units") long units);
+}
@@ -0,0 +1,11 @@
+package com.monkcommerce.couponapi.repository;
+
+import com.monkcommerce.couponapi.entity.Redemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface RedemptionRepository extends JpaRepository<Redemption, Long> {
+
+    long countByCouponId(Long couponId);
+
+    long countByCouponIdAndUserId(Long couponId, String userId);
+}
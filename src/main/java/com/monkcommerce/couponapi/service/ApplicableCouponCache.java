@@ -0,0 +1,123 @@
+package com.monkcommerce.couponapi.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.monkcommerce.couponapi.catalog.CatalogSnapshot;
+import com.monkcommerce.couponapi.dto.CartDto;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Applicable-coupon results keyed by catalog version and a canonical form of the cart. Any catalog
+ * change, including the daily roll past a start or expiry date, produces a new version, so stale
+ * entries are never hit and simply age out. Concurrent misses for the same key wait for a single
+ * computation. Hit and miss counts are published as the {@code cache.gets} metric, {@code cache=applicable}.
+ */
+@Component
+public class ApplicableCouponCache implements MeterBinder {
+
+    private final Cache<CartKey, List<Map<String, Object>>> cache;
+    // Held here because the registered meters only keep a weak reference to it.
+    private final CaffeineCacheMetrics<CartKey, List<Map<String, Object>>, Cache<CartKey, List<Map<String, Object>>>> cacheMetrics;
+
+    public ApplicableCouponCache(@Value("${coupon.cache.max-entries:10000}") long maxEntries,
+                                 @Value("${coupon.cache.ttl-seconds:60}") long ttlSeconds) {
+        if (maxEntries <= 0) {
+            this.cache = null;
+            this.cacheMetrics = null;
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.cacheMetrics = new CaffeineCacheMetrics<>(cache, "applicable", List.of());
+    }
+
+    /** A cache that always computes, for code built outside Spring. */
+    public static ApplicableCouponCache disabled() {
+        return new ApplicableCouponCache(0, 0);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (cacheMetrics != null) cacheMetrics.bindTo(registry);
+    }
+
+    public boolean enabled() { return cache != null; }
+
+    /** The cached result for this cart under {@code snapshot}, computing it once on a miss. Results are read-only. */
+    List<Map<String, Object>> get(CatalogSnapshot snapshot, CartDto cart, Supplier<List<Map<String, Object>>> compute) {
+        CartKey key = cache != null ? CartKey.of(snapshot.version(), cart) : null;
+        if (key == null) return compute.get();
+        return cache.get(key, k -> List.copyOf(compute.get()));
+    }
+
+    /**
+     * Cart lines stably sorted by product id. Evaluators only depend on each product's own lines
+     * and their relative order (first line for product-wise, last for BxGy), so carts with equal
+     * keys always get equal results. Prices compare with their scale, which shows in BxGy amounts.
+     */
+    static final class CartKey {
+        private final long version;
+        private final long[] productIds;
+        private final int[] quantities;
+        private final BigDecimal[] prices;
+        private final int hash;
+
+        private CartKey(long version, long[] productIds, int[] quantities, BigDecimal[] prices) {
+            this.version = version;
+            this.productIds = productIds;
+            this.quantities = quantities;
+            this.prices = prices;
+            int h = Long.hashCode(version);
+            h = 31 * h + Arrays.hashCode(productIds);
+            h = 31 * h + Arrays.hashCode(quantities);
+            h = 31 * h + Arrays.hashCode(prices);
+            this.hash = h;
+        }
+
+        /** Null if the cart has a line without product id or price; such carts are not cached. */
+        static CartKey of(long version, CartDto cart) {
+            List<CartDto.CartItemDto> items = cart.getItems();
+            for (CartDto.CartItemDto item : items) {
+                if (item.getProduct_id() == null || item.getPrice() == null) return null;
+            }
+            CartDto.CartItemDto[] sorted = items.toArray(new CartDto.CartItemDto[0]);
+            Arrays.sort(sorted, Comparator.comparing(CartDto.CartItemDto::getProduct_id));
+            long[] productIds = new long[sorted.length];
+            int[] quantities = new int[sorted.length];
+            BigDecimal[] prices = new BigDecimal[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                productIds[i] = sorted[i].getProduct_id();
+                quantities[i] = sorted[i].getQuantity();
+                prices[i] = sorted[i].getPrice();
+            }
+            return new CartKey(version, productIds, quantities, prices);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CartKey k && version == k.version && hash == k.hash
+                    && Arrays.equals(productIds, k.productIds)
+                    && Arrays.equals(quantities, k.quantities)
+                    && Arrays.equals(prices, k.prices);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+    }
+}
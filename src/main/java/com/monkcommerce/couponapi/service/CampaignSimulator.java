@@ -0,0 +1,264 @@
+package com.monkcommerce.couponapi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.monkcommerce.couponapi.catalog.CompiledCoupon;
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.pricing.CompiledCart;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Replays a corpus of carts against a draft coupon that is never saved, to estimate its cost before
+ * launch. The NDJSON body starts with the coupon (a create request) followed by one cart per line.
+ *
+ * <p>Lines are read on the calling thread and evaluated in chunks on the evaluation pool, with at
+ * most two chunks per worker in flight; each chunk folds into one running total. Memory therefore
+ * depends on the chunk size and the number of distinct products, never on the number of carts.
+ * Discount percentiles come from a histogram in cents over the carts the coupon applied to.
+ */
+@Service
+public class CampaignSimulator {
+
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    private final CouponService couponService;
+    private final CouponImportService couponImportService;
+    private final ForkJoinPool evaluationPool;
+    private final Validator validator;
+    private final ObjectReader couponReader;
+    private final ObjectReader cartReader;
+    private final int chunkSize;
+
+    public CampaignSimulator(CouponService couponService, CouponImportService couponImportService, ForkJoinPool evaluationPool,
+                             Validator validator, ObjectMapper objectMapper,
+                             @Value("${coupon.simulation.chunk-size:256}") int chunkSize) {
+        this.couponService = couponService;
+        this.couponImportService = couponImportService;
+        this.evaluationPool = evaluationPool;
+        this.validator = validator;
+        this.couponReader = objectMapper.readerFor(CouponDtos.CreateCouponRequest.class);
+        this.cartReader = objectMapper.readerFor(CartDto.class);
+        this.chunkSize = chunkSize;
+    }
+
+    private record Line(long number, String json) { }
+
+    /**
+     * @throws IllegalArgumentException if the first line is missing or is not a valid coupon
+     */
+    public Map<String, Object> simulate(InputStream in, int top) throws IOException {
+        if (top < 0) throw new IllegalArgumentException("top must not be negative");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        CompiledCoupon coupon = draft(reader.readLine());
+
+        Stats total = new Stats();
+        int maxInFlight = evaluationPool.getParallelism() * 2;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<Line> chunk = new ArrayList<>(chunkSize);
+        long number = 1;
+        String text;
+        try {
+            while ((text = reader.readLine()) != null) {
+                number++;
+                if (text.isBlank()) continue;
+                chunk.add(new Line(number, text));
+                if (chunk.size() == chunkSize) {
+                    submit(coupon, chunk, total, inFlight, failure);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) submit(coupon, chunk, total, inFlight, failure);
+        } finally {
+            inFlight.acquireUninterruptibly(maxInFlight);
+        }
+        if (failure.get() != null) throw failure.get();
+        return total.toMap(top);
+    }
+
+    private CompiledCoupon draft(String firstLine) {
+        if (firstLine == null || firstLine.isBlank()) throw new IllegalArgumentException("The first line must be the draft coupon");
+        CouponDtos.CreateCouponRequest req;
+        try {
+            req = couponReader.readValue(firstLine);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid draft coupon: " + e.getOriginalMessage());
+        }
+        String error = couponImportService.validate(req);
+        if (error != null) throw new IllegalArgumentException("Invalid draft coupon: " + error);
+        return CompiledCoupon.of(null, req.getType(), req.getStart_date(), req.getExpiry_date(), req.getDetails());
+    }
+
+    private void submit(CompiledCoupon coupon, List<Line> chunk, Stats total, Semaphore inFlight,
+                        AtomicReference<RuntimeException> failure) {
+        inFlight.acquireUninterruptibly();
+        try {
+            evaluationPool.execute(() -> {
+                try {
+                    Stats partial = new Stats();
+                    for (Line line : chunk) evaluate(coupon, line, partial);
+                    synchronized (total) { total.add(partial); }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void evaluate(CompiledCoupon coupon, Line line, Stats stats) {
+        CartDto cart;
+        try {
+            cart = cartReader.readValue(line.json());
+        } catch (JsonProcessingException e) {
+            stats.fail(line.number(), e.getOriginalMessage());
+            return;
+        }
+        Set<ConstraintViolation<CartDto>> violations = validator.validate(cart);
+        if (!violations.isEmpty()) {
+            stats.fail(line.number(), violations.stream()
+                    .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+            return;
+        }
+        CompiledCart compiled = CompiledCart.of(cart);
+        BigDecimal discount = couponService.evaluate(coupon, compiled);
+        stats.carts++;
+        stats.cartValue = stats.cartValue.add(compiled.total());
+        if (discount.signum() <= 0) return;
+        stats.hits++;
+        stats.discount = stats.discount.add(discount);
+        stats.histogram.recordValue(discount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact());
+        attribute(coupon, compiled, discount, stats);
+    }
+
+    // Splits a cart's discount over the products it came from; approximate, only used for ranking.
+    private void attribute(CompiledCoupon coupon, CompiledCart cart, BigDecimal discount, Stats stats) {
+        switch (coupon.type()) {
+            case CART_WISE -> {
+                double total = cart.total().doubleValue();
+                for (CartDto.CartItemDto item : cart.items()) {
+                    double share = item.getPrice().doubleValue() * item.getQuantity() / total;
+                    stats.product(item.getProduct_id(), discount.doubleValue() * share);
+                }
+            }
+            case PRODUCT_WISE -> stats.product(coupon.productId(), discount.doubleValue());
+            case BXGY -> {
+                int repetitions = couponService.bxGyRepetitions(coupon, cart, null);
+                for (CouponDtos.BuyGet get : coupon.getProducts()) {
+                    int slot = cart.find(get.getProduct_id());
+                    if (slot < 0) continue;
+                    double price = cart.lastLine(slot).getPrice().doubleValue();
+                    stats.product(get.getProduct_id(), price * get.getQuantity() * repetitions);
+                }
+            }
+        }
+    }
+
+    /** Running totals; one per chunk while evaluating, added into the overall one under its lock. */
+    private static final class Stats {
+        long carts;
+        long hits;
+        long invalid;
+        BigDecimal cartValue = BigDecimal.ZERO;
+        BigDecimal discount = BigDecimal.ZERO;
+        final Histogram histogram = new Histogram(3);
+        // product id -> {discount, carts}
+        final Map<Long, double[]> products = new HashMap<>();
+        final List<Map<String, Object>> errors = new ArrayList<>();
+
+        void fail(long line, String error) {
+            invalid++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("line", line);
+                entry.put("error", error);
+                errors.add(entry);
+            }
+        }
+
+        void product(Long productId, double amount) {
+            if (amount <= 0) return;
+            double[] p = products.computeIfAbsent(productId, k -> new double[2]);
+            p[0] += amount;
+            p[1]++;
+        }
+
+        void add(Stats other) {
+            carts += other.carts;
+            hits += other.hits;
+            cartValue = cartValue.add(other.cartValue);
+            discount = discount.add(other.discount);
+            histogram.add(other.histogram);
+            other.products.forEach((id, p) -> {
+                double[] mine = products.computeIfAbsent(id, k -> new double[2]);
+                mine[0] += p[0];
+                mine[1] += p[1];
+            });
+            invalid += other.invalid;
+            for (Map<String, Object> error : other.errors) {
+                if (errors.size() < MAX_REPORTED_ERRORS) errors.add(error);
+            }
+        }
+
+        Map<String, Object> toMap(int top) {
+            Map<String, Object> resp = new LinkedHashMap<>();
+            resp.put("carts", carts);
+            resp.put("invalid", invalid);
+            resp.put("hits", hits);
+            resp.put("hit_rate", carts == 0 ? 0.0 : hits / (double) carts);
+            resp.put("total_cart_value", cartValue);
+            resp.put("total_discount", discount);
+            resp.put("discount_share", cartValue.signum() == 0 ? 0.0 : discount.doubleValue() / cartValue.doubleValue());
+            Map<String, Object> percentiles = new LinkedHashMap<>();
+            percentiles.put("mean", hits == 0 ? BigDecimal.ZERO : discount.divide(BigDecimal.valueOf(hits), 2, RoundingMode.HALF_UP));
+            percentiles.put("p50", cents(histogram.getValueAtPercentile(50)));
+            percentiles.put("p90", cents(histogram.getValueAtPercentile(90)));
+            percentiles.put("p99", cents(histogram.getValueAtPercentile(99)));
+            percentiles.put("max", cents(histogram.getMaxValue()));
+            resp.put("discount_per_hit", percentiles);
+            List<Map<String, Object>> topProducts = products.entrySet().stream()
+                    .sorted(Comparator.<Map.Entry<Long, double[]>>comparingDouble(e -> -e.getValue()[0]).thenComparing(Map.Entry::getKey))
+                    .limit(top)
+                    .map(e -> {
+                        Map<String, Object> m = new LinkedHashMap<>();
+                        m.put("product_id", e.getKey());
+                        m.put("discount", BigDecimal.valueOf(e.getValue()[0]).setScale(2, RoundingMode.HALF_UP));
+                        m.put("carts", (long) e.getValue()[1]);
+                        return m;
+                    })
+                    .toList();
+            resp.put("top_products", topProducts);
+            resp.put("errors", errors);
+            return resp;
+        }
+
+        // Histogram values are equivalent within 3 significant digits, so these are approximate.
+        private static BigDecimal cents(long value) { return BigDecimal.valueOf(value, 2); }
+    }
+}
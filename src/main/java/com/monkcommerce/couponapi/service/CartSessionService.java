@@ -0,0 +1,226 @@
+package com.monkcommerce.couponapi.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.monkcommerce.couponapi.catalog.CatalogSnapshot;
+import com.monkcommerce.couponapi.catalog.CompiledCoupon;
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CartSessionDtos;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.pricing.CompiledCart;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Carts that change one line at a time. A session keeps its cart (one line per product) and the
+ * applicable coupons last computed for it. A delta only re-evaluates the coupons it can affect: the
+ * product-wise and BxGy coupons that read a changed product, the cart-wise coupons whose threshold
+ * the total moved across, and, when the total moved, the cart-wise coupons already applicable. The
+ * result is the same list {@link CouponService#applicableCoupons(CartDto)} returns for the cart.
+ * After any catalog change the session is evaluated in full once.
+ *
+ * <p>Sessions live in memory on the node that created them, at most {@code coupon.session.max-sessions},
+ * and expire {@code coupon.session.ttl-minutes} after their last use. Store metrics are published as
+ * {@code cache.*} with {@code cache=cart-sessions}.
+ */
+@Service
+public class CartSessionService implements MeterBinder {
+
+    private final CouponService couponService;
+    private final CouponCatalog couponCatalog;
+    private final Cache<String, Session> sessions;
+    // Held here because the registered meters only keep a weak reference to it.
+    private final CaffeineCacheMetrics<String, Session, Cache<String, Session>> cacheMetrics;
+
+    public CartSessionService(CouponService couponService, CouponCatalog couponCatalog,
+                              @Value("${coupon.session.max-sessions:100000}") long maxSessions,
+                              @Value("${coupon.session.ttl-minutes:30}") long ttlMinutes) {
+        this.couponService = couponService;
+        this.couponCatalog = couponCatalog;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        this.cacheMetrics = new CaffeineCacheMetrics<>(sessions, "cart-sessions", List.of());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) { cacheMetrics.bindTo(registry); }
+
+    private record Applicable(CompiledCoupon coupon, Map<String, Object> entry) { }
+
+    private static final class Session {
+        final String id;
+        // One line per product, in the order products were first added. Lines are replaced, never mutated.
+        LinkedHashMap<Long, CartDto.CartItemDto> lines = new LinkedHashMap<>();
+        CompiledCart cart = CompiledCart.of(new CartDto());
+        long version = -1;
+        final TreeMap<Long, Applicable> applicable = new TreeMap<>();
+
+        Session(String id) { this.id = id; }
+    }
+
+    /**
+     * Starts a session, optionally from a cart.
+     *
+     * @throws IllegalArgumentException if the cart has more than one line for a product
+     */
+    public Map<String, Object> create(CartDto cart) {
+        Session session = new Session(UUID.randomUUID().toString());
+        if (cart != null) {
+            for (CartDto.CartItemDto item : cart.getItems()) {
+                if (session.lines.putIfAbsent(item.getProduct_id(), copy(item)) != null) {
+                    throw new IllegalArgumentException("Product " + item.getProduct_id() + " is on more than one line");
+                }
+            }
+        }
+        int evaluated;
+        synchronized (session) {
+            session.cart = compile(session.lines);
+            evaluated = evaluateAll(session, couponCatalog.snapshot());
+        }
+        sessions.put(session.id, session);
+        return view(session, evaluated);
+    }
+
+    /** The session's cart and applicable coupons, re-evaluated only if the catalog changed since. */
+    public Map<String, Object> get(String id) {
+        Session session = find(id);
+        synchronized (session) {
+            CatalogSnapshot snapshot = couponCatalog.snapshot();
+            int evaluated = snapshot.version() == session.version ? 0 : evaluateAll(session, snapshot);
+            return view(session, evaluated);
+        }
+    }
+
+    /**
+     * Applies the deltas in order, all or none, and returns the updated session.
+     *
+     * @throws IllegalArgumentException if a delta is incomplete or names a product the cart lacks
+     */
+    public Map<String, Object> update(String id, List<CartSessionDtos.Delta> deltas) {
+        Session session = find(id);
+        synchronized (session) {
+            LinkedHashMap<Long, CartDto.CartItemDto> lines = new LinkedHashMap<>(session.lines);
+            Set<Long> changed = new HashSet<>();
+            for (CartSessionDtos.Delta delta : deltas) {
+                if (apply(lines, delta)) changed.add(delta.getProduct_id());
+            }
+            BigDecimal oldTotal = session.cart.total();
+            session.lines = lines;
+            session.cart = compile(lines);
+            CatalogSnapshot snapshot = couponCatalog.snapshot();
+            int evaluated = snapshot.version() == session.version
+                    ? evaluateChanged(session, snapshot, changed, oldTotal)
+                    : evaluateAll(session, snapshot);
+            return view(session, evaluated);
+        }
+    }
+
+    public void delete(String id) {
+        find(id);
+        sessions.invalidate(id);
+    }
+
+    private Session find(String id) {
+        Session session = sessions.getIfPresent(id);
+        if (session == null) throw new NoSuchElementException("Session not found");
+        return session;
+    }
+
+    // False if the delta leaves the cart as it was.
+    private static boolean apply(Map<Long, CartDto.CartItemDto> lines, CartSessionDtos.Delta delta) {
+        Long productId = delta.getProduct_id();
+        CartDto.CartItemDto line = lines.get(productId);
+        switch (delta.getOp()) {
+            case ADD -> {
+                if (delta.getQuantity() == null || delta.getQuantity() < 1) throw new IllegalArgumentException("ADD needs a quantity of at least 1");
+                BigDecimal price = delta.getPrice() != null ? delta.getPrice() : line != null ? line.getPrice() : null;
+                if (price == null) throw new IllegalArgumentException("ADD needs a price for product " + productId);
+                int quantity = line != null ? line.getQuantity() + delta.getQuantity() : delta.getQuantity();
+                lines.put(productId, line(productId, quantity, price));
+            }
+            case REMOVE -> {
+                return lines.remove(productId) != null;
+            }
+            case SET_QUANTITY -> {
+                if (delta.getQuantity() == null) throw new IllegalArgumentException("SET_QUANTITY needs a quantity");
+                if (line == null) throw new IllegalArgumentException("Product " + productId + " is not in the cart");
+                if (delta.getQuantity() == 0) lines.remove(productId);
+                else lines.put(productId, line(productId, delta.getQuantity(), line.getPrice()));
+            }
+        }
+        return true;
+    }
+
+    private int evaluateAll(Session session, CatalogSnapshot snapshot) {
+        session.applicable.clear();
+        session.version = snapshot.version();
+        List<CompiledCoupon> candidates = snapshot.candidates(session.cart);
+        for (CompiledCoupon coupon : candidates) evaluate(session, coupon);
+        return candidates.size();
+    }
+
+    private int evaluateChanged(Session session, CatalogSnapshot snapshot, Set<Long> changed, BigDecimal oldTotal) {
+        long[] productIds = changed.stream().mapToLong(Long::longValue).toArray();
+        Map<Long, CompiledCoupon> affected = new HashMap<>();
+        for (CompiledCoupon coupon : snapshot.affectedBy(productIds)) affected.put(coupon.id(), coupon);
+        BigDecimal newTotal = session.cart.total();
+        if (newTotal.compareTo(oldTotal) != 0) {
+            for (CompiledCoupon coupon : snapshot.cartWiseCrossing(oldTotal, newTotal)) affected.put(coupon.id(), coupon);
+            // A cart-wise discount is a share of the total, so those still applicable change too.
+            for (Applicable a : session.applicable.values()) {
+                if (a.coupon().type() == CouponType.CART_WISE) affected.put(a.coupon().id(), a.coupon());
+            }
+        }
+        for (CompiledCoupon coupon : affected.values()) evaluate(session, coupon);
+        return affected.size();
+    }
+
+    private void evaluate(Session session, CompiledCoupon coupon) {
+        BigDecimal discount = couponService.evaluate(coupon, session.cart);
+        if (discount.compareTo(BigDecimal.ZERO) > 0) {
+            session.applicable.put(coupon.id(), new Applicable(coupon, CouponService.applicableEntry(coupon, discount)));
+        } else {
+            session.applicable.remove(coupon.id());
+        }
+    }
+
+    private static Map<String, Object> view(Session session, int evaluated) {
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("session_id", session.id);
+        resp.put("items", session.cart.items());
+        resp.put("cart_total", session.cart.total());
+        resp.put("applicable_coupons", session.applicable.values().stream().map(Applicable::entry).toList());
+        resp.put("evaluated", evaluated);
+        return resp;
+    }
+
+    private static CompiledCart compile(Map<Long, CartDto.CartItemDto> lines) {
+        CartDto cart = new CartDto();
+        cart.setItems(List.copyOf(lines.values()));
+        return CompiledCart.of(cart);
+    }
+
+    private static CartDto.CartItemDto copy(CartDto.CartItemDto item) {
+        return line(item.getProduct_id(), item.getQuantity(), item.getPrice());
+    }
+
+    private static CartDto.CartItemDto line(Long productId, int quantity, BigDecimal price) {
+        CartDto.CartItemDto line = new CartDto.CartItemDto();
+        line.setProduct_id(productId);
+        line.setQuantity(quantity);
+        line.setPrice(price);
+        return line;
+    }
+}
@@ -0,0 +1,181 @@
+package com.monkcommerce.couponapi.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Open-addressing hash table from single-use code to coupon, sized for millions of codes. Each slot
+ * holds a 64-bit hash of the code (not the code itself) and a 4-byte index into the coupon ids, and
+ * a bitset marks redeemed slots; about 17 bytes per code at the table's maximum load. The redeemed
+ * bit is set with a CAS, so exactly one caller wins a code.
+ *
+ * <p>Hashes are seeded per instance. Two codes with the same hash would share a slot; the chance
+ * is about n&sup2;/2<sup>65</sup> (three in a million at ten million codes), and {@link #add} reports
+ * such a code as present so generators can draw another one.
+ */
+final class CodeIndex {
+
+    private static final double MAX_LOAD = 0.7;
+
+    /** A code's coupon and whether it has been redeemed. */
+    record Lookup(long couponId, boolean redeemed) { }
+
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] hashes;
+    private int[] coupons;
+    private AtomicLongArray redeemed;
+    private int size;
+    // Codes map to few coupons, so slots store an index into this list instead of the id.
+    private long[] couponIds = new long[16];
+    private final Map<Long, Integer> couponIndex = new HashMap<>();
+
+    CodeIndex(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try { return size; } finally { lock.readLock().unlock(); }
+    }
+
+    /** Null if the code is not in the index. */
+    Lookup lookup(String code) {
+        long h = hash(code);
+        lock.readLock().lock();
+        try {
+            int slot = find(h);
+            if (slot < 0) return null;
+            return new Lookup(couponIds[coupons[slot]], isSet(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean contains(String code) { return lookup(code) != null; }
+
+    /** Adds the code; false if it (or a code with the same hash) is already present. */
+    boolean add(String code, long couponId, boolean isRedeemed) {
+        long h = hash(code);
+        lock.writeLock().lock();
+        try {
+            if (find(h) >= 0) return false;
+            if (size + 1 > hashes.length * MAX_LOAD) grow();
+            int slot = insert(h, couponSlot(couponId));
+            if (isRedeemed) setBit(redeemed, slot);
+            size++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Sets the redeemed bit; true only for the one caller that changed it, false if absent or already set. */
+    boolean markRedeemed(String code) {
+        long h = hash(code);
+        lock.readLock().lock();
+        try {
+            int slot = find(h);
+            return slot >= 0 && setBit(redeemed, slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void clearRedeemed(String code) {
+        long h = hash(code);
+        lock.readLock().lock();
+        try {
+            int slot = find(h);
+            if (slot < 0) return;
+            long mask = 1L << slot;
+            long word;
+            do { word = redeemed.get(slot >>> 6); } while (!redeemed.compareAndSet(slot >>> 6, word, word & ~mask));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Seeded FNV-1a over the chars, then the MurmurHash3 finalizer; never 0, which marks an empty slot.
+    long hash(String code) {
+        long h = seed ^ 0xcbf29ce484222325L;
+        for (int i = 0; i < code.length(); i++) {
+            h ^= code.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private int find(long h) {
+        int mask = hashes.length - 1;
+        for (int slot = (int) h & mask; ; slot = (slot + 1) & mask) {
+            long v = hashes[slot];
+            if (v == h) return slot;
+            if (v == 0) return -1;
+        }
+    }
+
+    private int insert(long h, int coupon) {
+        int mask = hashes.length - 1;
+        int slot = (int) h & mask;
+        while (hashes[slot] != 0) slot = (slot + 1) & mask;
+        hashes[slot] = h;
+        coupons[slot] = coupon;
+        return slot;
+    }
+
+    private int couponSlot(long couponId) {
+        return couponIndex.computeIfAbsent(couponId, id -> {
+            int i = couponIndex.size();
+            if (i == couponIds.length) couponIds = Arrays.copyOf(couponIds, i * 2);
+            couponIds[i] = id;
+            return i;
+        });
+    }
+
+    private boolean isSet(int slot) {
+        return (redeemed.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    private static boolean setBit(AtomicLongArray bits, int slot) {
+        long mask = 1L << slot;
+        long word;
+        do {
+            word = bits.get(slot >>> 6);
+            if ((word & mask) != 0) return false;
+        } while (!bits.compareAndSet(slot >>> 6, word, word | mask));
+        return true;
+    }
+
+    private void grow() {
+        long[] oldHashes = hashes;
+        int[] oldCoupons = coupons;
+        AtomicLongArray oldRedeemed = redeemed;
+        allocate(oldHashes.length * 2);
+        for (int slot = 0; slot < oldHashes.length; slot++) {
+            if (oldHashes[slot] == 0) continue;
+            int moved = insert(oldHashes[slot], oldCoupons[slot]);
+            if ((oldRedeemed.get(slot >>> 6) & (1L << slot)) != 0) setBit(redeemed, moved);
+        }
+    }
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        coupons = new int[capacity];
+        redeemed = new AtomicLongArray((capacity + 63) >>> 6);
+    }
+
+    private static int capacityFor(int expected) {
+        int needed = (int) Math.ceil(Math.max(expected, 16) / MAX_LOAD);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+}
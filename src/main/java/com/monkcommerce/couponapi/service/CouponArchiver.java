@@ -0,0 +1,201 @@
+package com.monkcommerce.couponapi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
+import com.monkcommerce.couponapi.catalog.CouponChangeLog;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.entity.ArchivedCoupon;
+import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.metrics.CouponMetrics;
+import com.monkcommerce.couponapi.repository.ArchivedCouponRepository;
+import com.monkcommerce.couponapi.repository.CouponRepository;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves coupons that expired more than {@code coupon.archive.grace-days} ago from {@code coupon} into
+ * {@code coupon_archive}, so the catalog load, listings and candidate queries only read coupons that
+ * can still apply. Runs every {@code coupon.archive.interval-minutes}, {@code coupon.archive.batch-size}
+ * coupons per transaction, so locks are held for one short batch at a time. Each batch is logged as
+ * deletes in the change log, so other nodes drop the coupons too.
+ *
+ * <p>{@link #restore} moves an archived coupon back under its original id. One still past the grace
+ * period is archived again on the next run unless it is given a new expiry date.
+ */
+@Component
+public class CouponArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(CouponArchiver.class);
+
+    private final CouponRepository couponRepository;
+    private final ArchivedCouponRepository archivedCouponRepository;
+    private final CouponCatalog couponCatalog;
+    private final CouponChangeLog couponChangeLog;
+    private final CouponMetrics couponMetrics;
+    private final TransactionOperations transactionOperations;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final int graceDays;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    public CouponArchiver(CouponRepository couponRepository, ArchivedCouponRepository archivedCouponRepository,
+                          CouponCatalog couponCatalog, CouponChangeLog couponChangeLog, CouponMetrics couponMetrics,
+                          TransactionOperations transactionOperations, EntityManager entityManager,
+                          ObjectMapper objectMapper, Clock clock,
+                          @Value("${coupon.archive.grace-days:30}") int graceDays,
+                          @Value("${coupon.archive.batch-size:500}") int batchSize,
+                          @Value("${coupon.archive.interval-minutes:60}") long intervalMinutes) {
+        this.couponRepository = couponRepository;
+        this.archivedCouponRepository = archivedCouponRepository;
+        this.couponCatalog = couponCatalog;
+        this.couponChangeLog = couponChangeLog;
+        this.couponMetrics = couponMetrics;
+        this.transactionOperations = transactionOperations;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.graceDays = graceDays;
+        this.batchSize = batchSize;
+        if (intervalMinutes <= 0) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "coupon-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::archiveQuietly, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /** Archives every coupon past its expiry date plus the grace period; returns how many were moved. */
+    public synchronized int archive() {
+        long start = System.nanoTime();
+        LocalDate cutoff = LocalDate.now(clock).minusDays(graceDays);
+        int moved = 0;
+        long afterId = 0L;
+        while (true) {
+            long from = afterId;
+            List<Long> batch = transactionOperations.execute(status -> archiveBatch(cutoff, from));
+            if (batch == null || batch.isEmpty()) break;
+            moved += batch.size();
+            afterId = batch.get(batch.size() - 1);
+        }
+        couponMetrics.archiveRun(moved, System.nanoTime() - start);
+        return moved;
+    }
+
+    // Returns the ids looked at, archived or not, so the caller can page past them.
+    private List<Long> archiveBatch(LocalDate cutoff, long afterId) {
+        List<Long> ids = couponRepository.findExpiredIds(cutoff, afterId, PageRequest.ofSize(batchSize));
+        if (ids.isEmpty()) return ids;
+        Instant now = clock.instant();
+        List<ArchivedCoupon> archived = new ArrayList<>(ids.size());
+        List<Coupon> coupons = new ArrayList<>(ids.size());
+        for (Coupon coupon : couponRepository.findAllById(ids)) {
+            // Re-checked on the loaded row: it may have been updated since the ids were read.
+            if (coupon.getExpiryDate() == null || !coupon.getExpiryDate().isBefore(cutoff)) continue;
+            archived.add(toArchive(coupon, now));
+            coupons.add(coupon);
+        }
+        List<Long> deleted = coupons.stream().map(Coupon::getId).toList();
+        archivedCouponRepository.saveAll(archived);
+        couponRepository.deleteAll(coupons);
+        couponChangeLog.deleted(deleted);
+        couponCatalog.onDeleted(deleted);
+        entityManager.flush();
+        entityManager.clear();
+        return ids;
+    }
+
+    private ArchivedCoupon toArchive(Coupon coupon, Instant now) {
+        CouponDtos.Details details = coupon.getDetailsJson() != null ? couponCatalog.readDetails(coupon) : coupon.getDetails();
+        ArchivedCoupon a = new ArchivedCoupon();
+        a.setId(coupon.getId());
+        a.setName(coupon.getName());
+        a.setType(coupon.getType());
+        a.setStartDate(coupon.getStartDate());
+        a.setExpiryDate(coupon.getExpiryDate());
+        try { a.setDetailsJson(objectMapper.writeValueAsString(details)); }
+        catch (JsonProcessingException e) { throw new IllegalStateException(e); }
+        a.setArchivedAt(now);
+        return a;
+    }
+
+    private void archiveQuietly() {
+        try {
+            int moved = archive();
+            if (moved > 0) log.info("Archived {} coupons expired more than {} days ago", moved, graceDays);
+        } catch (RuntimeException e) {
+            log.warn("Coupon archival failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Moves an archived coupon back into the catalog under its original id.
+     *
+     * @param expiryDate new expiry date, or null to keep the archived one
+     * @throws NoSuchElementException if no coupon with this id is archived
+     * @throws DuplicateKeyException if a live coupon already has this id
+     */
+    public Coupon restore(Long id, LocalDate expiryDate) {
+        Coupon restored = transactionOperations.execute(status -> {
+            ArchivedCoupon a = archivedCouponRepository.findById(id)
+                    .orElseThrow(() -> new NoSuchElementException("Archived coupon not found"));
+            if (couponRepository.existsById(id)) throw new DuplicateKeyException("Coupon " + id + " already exists");
+            CouponDtos.Details details;
+            try { details = objectMapper.readValue(a.getDetailsJson(), CouponDtos.Details.class); }
+            catch (JsonProcessingException e) { throw new IllegalStateException(e); }
+            couponRepository.insertWithId(a.getId(), a.getName(), a.getType().name(), a.getStartDate(),
+                    expiryDate != null ? expiryDate : a.getExpiryDate());
+            Coupon coupon = couponRepository.findById(id).orElseThrow();
+            coupon.setDetails(details);
+            archivedCouponRepository.delete(a);
+            couponChangeLog.saved(List.of(coupon));
+            couponCatalog.onSaved(coupon);
+            return coupon;
+        });
+        couponMetrics.restored();
+        return restored;
+    }
+
+    /** One keyset page of archived coupons, in id order; pass {@code next_cursor} as {@code after}. */
+    public Map<String, Object> page(Long after, int limit) {
+        if (limit < 1 || limit > CouponListingService.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + CouponListingService.MAX_PAGE_SIZE);
+        }
+        List<ArchivedCoupon> coupons = archivedCouponRepository.findPage(after == null ? 0L : after, PageRequest.ofSize(limit));
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("coupons", coupons);
+        resp.put("next_cursor", coupons.size() == limit ? coupons.get(coupons.size() - 1).getId() : null);
+        return resp;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+}
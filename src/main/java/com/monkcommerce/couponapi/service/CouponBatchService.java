@@ -0,0 +1,82 @@
+package com.monkcommerce.couponapi.service;
+
+import com.monkcommerce.couponapi.catalog.CatalogSnapshot;
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
+import com.monkcommerce.couponapi.dto.CartDto;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates many carts against one catalog snapshot, spreading carts over the evaluation pool.
+ * A cart that is invalid or fails to evaluate gets an error entry; the rest of the batch is unaffected.
+ */
+@Service
+public class CouponBatchService {
+
+    // Below this many carts, forking costs more than it saves.
+    private static final int PARALLEL_THRESHOLD = 8;
+
+    private final CouponService couponService;
+    private final CouponCatalog couponCatalog;
+    private final ForkJoinPool evaluationPool;
+    private final Validator validator;
+    private final int maxCarts;
+
+    public CouponBatchService(CouponService couponService, CouponCatalog couponCatalog, ForkJoinPool evaluationPool,
+                              Validator validator, @Value("${coupon.batch.max-carts:1000}") int maxCarts) {
+        this.couponService = couponService;
+        this.couponCatalog = couponCatalog;
+        this.evaluationPool = evaluationPool;
+        this.validator = validator;
+        this.maxCarts = maxCarts;
+    }
+
+    public Map<String, Object> applicableCoupons(List<CartDto> carts) {
+        if (carts.size() > maxCarts) throw new IllegalArgumentException("At most " + maxCarts + " carts per batch");
+        CatalogSnapshot snapshot = couponCatalog.snapshot();
+        List<Map<String, Object>> results;
+        if (carts.size() < PARALLEL_THRESHOLD) {
+            results = new ArrayList<>(carts.size());
+            for (int i = 0; i < carts.size(); i++) results.add(evaluate(i, carts.get(i), snapshot));
+        } else {
+            results = evaluationPool.submit(() -> IntStream.range(0, carts.size()).parallel()
+                    .mapToObj(i -> evaluate(i, carts.get(i), snapshot))
+                    .toList()).join();
+        }
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("catalog_version", snapshot.version());
+        resp.put("results", results);
+        return resp;
+    }
+
+    private Map<String, Object> evaluate(int index, CartDto cart, CatalogSnapshot snapshot) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", index);
+        try {
+            String invalid = validate(cart);
+            if (invalid != null) result.put("error", invalid);
+            else result.put("applicable_coupons", couponService.applicableCoupons(cart, snapshot));
+        } catch (RuntimeException e) {
+            result.put("error", e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+        return result;
+    }
+
+    private String validate(CartDto cart) {
+        if (cart == null) return "cart is required";
+        Set<ConstraintViolation<CartDto>> violations = validator.validate(cart);
+        if (violations.isEmpty()) return null;
+        return violations.stream()
+                .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+}
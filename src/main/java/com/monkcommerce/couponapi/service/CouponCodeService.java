@@ -0,0 +1,209 @@
+package com.monkcommerce.couponapi.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
+import com.monkcommerce.couponapi.dto.ApplyCouponResponse;
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.entity.CouponCode;
+import com.monkcommerce.couponapi.repository.CouponCodeRepository;
+
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Single-use codes that each redeem one coupon. Codes are stored in {@code coupon_code} and mirrored
+ * in a {@link CodeIndex} rebuilt from that table at startup, so resolving a code, and rejecting one
+ * already redeemed here, needs no database round trip. Redeeming sets the index's bit first and then
+ * marks the row with a conditional update, which stays correct when several nodes share the table.
+ *
+ * <p>A code missing from the index (e.g. generated on another node since startup) is looked up in
+ * the database once and added.
+ */
+@Service
+public class CouponCodeService {
+
+    private static final Logger log = LoggerFactory.getLogger(CouponCodeService.class);
+    // Crockford base32: no I, L, O or U, so codes survive being read aloud or retyped.
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int CHUNK_SIZE = 1000;
+
+    private final CouponCodeRepository codeRepository;
+    private final CouponCatalog couponCatalog;
+    private final CouponService couponService;
+    private final TransactionOperations transactionOperations;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final int codeLength;
+    private final int maxPerRequest;
+    private final SecureRandom random = new SecureRandom();
+    private final CodeIndex index;
+
+    public CouponCodeService(CouponCodeRepository codeRepository, CouponCatalog couponCatalog, CouponService couponService,
+                             TransactionOperations transactionOperations, EntityManager entityManager,
+                             ObjectMapper objectMapper, Clock clock,
+                             @Value("${coupon.codes.length:12}") int codeLength,
+                             @Value("${coupon.codes.max-per-request:1000000}") int maxPerRequest) {
+        this.codeRepository = codeRepository;
+        this.couponCatalog = couponCatalog;
+        this.couponService = couponService;
+        this.transactionOperations = transactionOperations;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.codeLength = codeLength;
+        this.maxPerRequest = maxPerRequest;
+        this.index = load();
+    }
+
+    private CodeIndex load() {
+        long start = System.nanoTime();
+        CodeIndex loaded = new CodeIndex((int) Math.min(codeRepository.count(), Integer.MAX_VALUE / 2));
+        transactionOperations.executeWithoutResult(status -> {
+            try (Stream<CouponCodeRepository.CodeRow> rows = codeRepository.streamAll()) {
+                rows.forEach(row -> loaded.add(row.code(), row.couponId(), row.redeemed()));
+            }
+        });
+        if (loaded.size() > 0) {
+            log.info("Indexed {} coupon codes in {} ms", loaded.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return loaded;
+    }
+
+    /**
+     * Creates {@code count} new codes for the coupon, {@code prefix} followed by random characters,
+     * written {@value #CHUNK_SIZE} per transaction; returns how many were created.
+     *
+     * @throws NoSuchElementException if the coupon does not exist
+     */
+    public synchronized int generate(Long couponId, int count, String prefix) {
+        if (count < 1 || count > maxPerRequest) throw new IllegalArgumentException("count must be between 1 and " + maxPerRequest);
+        String p = prefix == null ? "" : prefix.toUpperCase(Locale.ROOT);
+        if (!p.chars().allMatch(c -> (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) || p.length() > 16) {
+            throw new IllegalArgumentException("prefix must be at most 16 letters or digits");
+        }
+        if (couponCatalog.snapshot().get(couponId) == null) throw new NoSuchElementException("Coupon not found");
+        int created = 0;
+        while (created < count) {
+            int n = Math.min(CHUNK_SIZE, count - created);
+            Set<String> chunk = new LinkedHashSet<>(n * 2);
+            while (chunk.size() < n) {
+                String code = randomCode(p);
+                if (!index.contains(code)) chunk.add(code);
+            }
+            transactionOperations.executeWithoutResult(status -> {
+                List<CouponCode> rows = new ArrayList<>(chunk.size());
+                for (String code : chunk) rows.add(new CouponCode(code, couponId));
+                codeRepository.saveAll(rows);
+                entityManager.flush();
+                entityManager.clear();
+            });
+            for (String code : chunk) index.add(code, couponId, false);
+            created += n;
+        }
+        return created;
+    }
+
+    private String randomCode(String prefix) {
+        char[] code = new char[prefix.length() + codeLength];
+        prefix.getChars(0, prefix.length(), code, 0);
+        for (int i = prefix.length(); i < code.length; i++) code[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        return new String(code);
+    }
+
+    /**
+     * The code's coupon and whether it is redeemed, from the index.
+     *
+     * @throws NoSuchElementException if there is no such code
+     */
+    public Map<String, Object> resolve(String code) {
+        CodeIndex.Lookup lookup = lookup(code);
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("code", code);
+        resp.put("coupon_id", lookup.couponId());
+        resp.put("redeemed", lookup.redeemed());
+        return resp;
+    }
+
+    private CodeIndex.Lookup lookup(String code) {
+        CodeIndex.Lookup lookup = index.lookup(code);
+        if (lookup != null) return lookup;
+        CouponCodeRepository.CodeRow row = codeRepository.findRow(code)
+                .orElseThrow(() -> new NoSuchElementException("Code not found"));
+        index.add(row.code(), row.couponId(), row.redeemed());
+        return new CodeIndex.Lookup(row.couponId(), row.redeemed());
+    }
+
+    /**
+     * Applies the code's coupon to the cart and marks the code redeemed, both or neither. Coupon
+     * redemption limits still apply.
+     *
+     * @throws NoSuchElementException if there is no such code or its coupon no longer exists
+     * @throws IllegalArgumentException if the code is already redeemed or the coupon cannot be applied
+     *         or gives the cart no discount
+     */
+    public ApplyCouponResponse redeem(String code, CartDto cart, String userId) {
+        CodeIndex.Lookup lookup = lookup(code);
+        // The index keeps codes of coupons deleted or archived since it was built; they redeem nothing.
+        if (couponCatalog.snapshot().get(lookup.couponId()) == null) throw new NoSuchElementException("Coupon not found");
+        if (!index.markRedeemed(code)) throw new IllegalArgumentException("Code already redeemed");
+        // Millisecond precision so unredeem can match the stored value exactly.
+        Instant at = clock.instant().truncatedTo(ChronoUnit.MILLIS);
+        Integer updated;
+        try {
+            updated = transactionOperations.execute(status -> codeRepository.redeem(code, at));
+        } catch (RuntimeException e) {
+            index.clearRedeemed(code);
+            throw e;
+        }
+        // Redeemed through another node; the bit stays set.
+        if (updated == null || updated == 0) throw new IllegalArgumentException("Code already redeemed");
+        try {
+            ApplyCouponResponse response = couponService.applyCoupon(lookup.couponId(), cart, userId);
+            // A coupon that gives this cart nothing must not use up the code.
+            if (response.updated_cart().total_discount().signum() <= 0) {
+                throw new IllegalArgumentException("Coupon does not apply to this cart");
+            }
+            return response;
+        } catch (RuntimeException e) {
+            transactionOperations.executeWithoutResult(status -> codeRepository.unredeem(code, at));
+            index.clearRedeemed(code);
+            throw e;
+        }
+    }
+
+    /** Writes the coupon's codes as {@code {"code":...,"redeemed":...}} lines, in creation order. */
+    @Transactional(readOnly = true)
+    public void exportNdjson(Long couponId, OutputStream out) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.setRootValueSeparator(null);
+        try (Stream<CouponCodeRepository.CodeRow> rows = codeRepository.streamByCouponId(couponId)) {
+            int written = 0;
+            for (CouponCodeRepository.CodeRow row : (Iterable<CouponCodeRepository.CodeRow>) rows::iterator) {
+                json.writeStartObject();
+                json.writeStringField("code", row.code());
+                json.writeBooleanField("redeemed", row.redeemed());
+                json.writeEndObject();
+                json.writeRaw('\n');
+                if (++written % CHUNK_SIZE == 0) json.flush();
+            }
+        }
+        json.flush();
+    }
+}
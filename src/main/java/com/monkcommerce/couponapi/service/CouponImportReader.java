@@ -0,0 +1,159 @@
+package com.monkcommerce.couponapi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.model.CouponType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads import rows one line at a time, so an import never holds more than the current line.
+ * A line that cannot be parsed comes back as a row with an error instead of ending the import.
+ */
+abstract class CouponImportReader {
+
+    /** One input line: either a parsed request or the reason it could not be parsed. */
+    record Row(long line, CouponDtos.CreateCouponRequest request, String error) { }
+
+    static final Set<String> CSV_COLUMNS = Set.of("type", "name", "start_date", "expiry_date", "threshold", "discount",
+            "product_id", "buy_products", "get_products", "repetition_limit", "exclusive", "max_redemptions",
+            "max_redemptions_per_user");
+
+    private final BufferedReader reader;
+    private long line;
+
+    CouponImportReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /** The next row, or null at end of input. Blank lines are skipped. */
+    Row next() throws IOException {
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.isBlank()) continue;
+            try {
+                return new Row(line, parse(text), null);
+            } catch (JsonProcessingException e) {
+                return new Row(line, null, "malformed JSON: " + e.getOriginalMessage());
+            } catch (RuntimeException e) {
+                return new Row(line, null, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    abstract CouponDtos.CreateCouponRequest parse(String text) throws IOException;
+
+    static CouponImportReader ndjson(BufferedReader reader, ObjectReader json) {
+        return new CouponImportReader(reader) {
+            @Override
+            CouponDtos.CreateCouponRequest parse(String text) throws IOException {
+                return json.readValue(text);
+            }
+        };
+    }
+
+    /**
+     * CSV with a header row naming any of {@link #CSV_COLUMNS}. BxGy products are written as
+     * {@code product_id:quantity} pairs separated by {@code ;}. Quoted fields may not span lines.
+     */
+    static CouponImportReader csv(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null) throw new IllegalArgumentException("CSV header row is missing");
+        List<String> columns = new ArrayList<>();
+        for (String column : split(header)) {
+            String name = column.trim().toLowerCase();
+            if (!CSV_COLUMNS.contains(name)) throw new IllegalArgumentException("Unknown CSV column: " + column);
+            if (columns.contains(name)) throw new IllegalArgumentException("Duplicate CSV column: " + column);
+            columns.add(name);
+        }
+        CouponImportReader csv = new CouponImportReader(reader) {
+            @Override
+            CouponDtos.CreateCouponRequest parse(String text) {
+                List<String> fields = split(text);
+                if (fields.size() != columns.size()) {
+                    throw new IllegalArgumentException("expected " + columns.size() + " fields, found " + fields.size());
+                }
+                CouponDtos.CreateCouponRequest req = new CouponDtos.CreateCouponRequest();
+                CouponDtos.Details d = new CouponDtos.Details();
+                req.setDetails(d);
+                for (int i = 0; i < fields.size(); i++) {
+                    String v = fields.get(i).trim();
+                    if (v.isEmpty()) continue;
+                    switch (columns.get(i)) {
+                        case "type" -> req.setType(CouponType.valueOf(v.toUpperCase()));
+                        case "name" -> req.setName(v);
+                        case "start_date" -> req.setStart_date(LocalDate.parse(v));
+                        case "expiry_date" -> req.setExpiry_date(LocalDate.parse(v));
+                        case "threshold" -> d.setThreshold(new BigDecimal(v));
+                        case "discount" -> d.setDiscount(new BigDecimal(v));
+                        case "product_id" -> d.setProduct_id(Long.parseLong(v));
+                        case "buy_products" -> d.setBuy_products(buyGets(v));
+                        case "get_products" -> d.setGet_products(buyGets(v));
+                        case "repetition_limit" -> d.setRepetition_limit(Integer.parseInt(v));
+                        case "exclusive" -> d.setExclusive(bool(v));
+                        case "max_redemptions" -> d.setMax_redemptions(Integer.parseInt(v));
+                        case "max_redemptions_per_user" -> d.setMax_redemptions_per_user(Integer.parseInt(v));
+                        default -> throw new IllegalStateException(columns.get(i));
+                    }
+                }
+                return req;
+            }
+        };
+        csv.line = 1;
+        return csv;
+    }
+
+    // Boolean.parseBoolean would read "yes" or "1" as false without complaint.
+    private static boolean bool(String value) {
+        if (value.equalsIgnoreCase("true")) return true;
+        if (value.equalsIgnoreCase("false")) return false;
+        throw new IllegalArgumentException("expected true or false, found '" + value + "'");
+    }
+
+    private static List<CouponDtos.BuyGet> buyGets(String value) {
+        List<CouponDtos.BuyGet> result = new ArrayList<>();
+        for (String pair : value.split(";")) {
+            String[] parts = pair.trim().split(":");
+            if (parts.length != 2) throw new IllegalArgumentException("expected product_id:quantity, found '" + pair + "'");
+            CouponDtos.BuyGet bg = new CouponDtos.BuyGet();
+            bg.setProduct_id(Long.parseLong(parts[0].trim()));
+            bg.setQuantity(Integer.parseInt(parts[1].trim()));
+            result.add(bg);
+        }
+        return result;
+    }
+
+    // RFC 4180 fields on a single line: commas separate, double quotes quote, "" is a literal quote.
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch != '"') field.append(ch);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"') { field.append('"'); i++; }
+                else quoted = false;
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(ch);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("unterminated quoted field");
+        fields.add(field.toString());
+        return fields;
+    }
+}
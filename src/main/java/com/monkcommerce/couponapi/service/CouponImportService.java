@@ -0,0 +1,173 @@
+package com.monkcommerce.couponapi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
+import com.monkcommerce.couponapi.catalog.CouponChangeLog;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.repository.CouponRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk coupon creation from a streamed NDJSON or CSV body. Rows are validated as they are read and
+ * inserted in chunks, one transaction and one JDBC batch per chunk, and the persistence context is
+ * cleared after each, so memory use does not grow with the file. A bad row is reported by line
+ * number and skipped; the rest of the file still imports.
+ *
+ * <p>The imported coupons are published to the catalog as one snapshot when the import ends, not
+ * one per chunk, since each snapshot copies the whole catalog.
+ */
+@Service
+public class CouponImportService {
+
+    public enum Format { NDJSON, CSV }
+
+    // Every failure is counted, but only this many are listed in the response.
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final CouponRepository couponRepository;
+    private final CouponCatalog couponCatalog;
+    private final CouponChangeLog couponChangeLog;
+    private final EntityManager entityManager;
+    private final TransactionOperations transactionOperations;
+    private final Validator validator;
+    private final ObjectReader requestReader;
+    private final int chunkSize;
+
+    public CouponImportService(CouponRepository couponRepository, CouponCatalog couponCatalog, CouponChangeLog couponChangeLog,
+                               EntityManager entityManager,
+                               TransactionOperations transactionOperations, Validator validator, ObjectMapper objectMapper,
+                               @Value("${coupon.import.chunk-size:500}") int chunkSize) {
+        this.couponRepository = couponRepository;
+        this.couponCatalog = couponCatalog;
+        this.couponChangeLog = couponChangeLog;
+        this.entityManager = entityManager;
+        this.transactionOperations = transactionOperations;
+        this.validator = validator;
+        this.requestReader = objectMapper.readerFor(CouponDtos.CreateCouponRequest.class);
+        this.chunkSize = chunkSize;
+    }
+
+    public Map<String, Object> importCoupons(InputStream in, Format format) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        CouponImportReader rows = format == Format.CSV ? CouponImportReader.csv(reader) : CouponImportReader.ndjson(reader, requestReader);
+        Report report = new Report();
+        List<Long> committed = new ArrayList<>();
+        try {
+            List<CouponImportReader.Row> chunk = new ArrayList<>(chunkSize);
+            CouponImportReader.Row row;
+            while ((row = rows.next()) != null) {
+                String error = row.error() != null ? row.error() : validate(row.request());
+                if (error != null) {
+                    report.fail(row.line(), error);
+                    continue;
+                }
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    insert(chunk, report, committed);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) insert(chunk, report, committed);
+        } finally {
+            // Also when reading fails part way: the chunks already committed must become visible.
+            if (!committed.isEmpty()) couponCatalog.refresh(committed);
+        }
+        return report.toMap();
+    }
+
+    private void insert(List<CouponImportReader.Row> chunk, Report report, List<Long> committed) {
+        try {
+            committed.addAll(persist(chunk));
+            report.imported += chunk.size();
+        } catch (RuntimeException e) {
+            // One failing row rolls back the whole chunk; retry row by row to find it.
+            for (CouponImportReader.Row row : chunk) {
+                try {
+                    committed.addAll(persist(List.of(row)));
+                    report.imported++;
+                } catch (RuntimeException rowFailure) {
+                    report.fail(row.line(), NestedExceptionUtils.getMostSpecificCause(rowFailure).getMessage());
+                }
+            }
+        }
+    }
+
+    // Returns the new ids once their transaction has committed.
+    private List<Long> persist(List<CouponImportReader.Row> rows) {
+        return transactionOperations.execute(status -> {
+            List<Coupon> coupons = new ArrayList<>(rows.size());
+            for (CouponImportReader.Row row : rows) coupons.add(CouponService.newCoupon(row.request()));
+            couponRepository.saveAll(coupons);
+            couponChangeLog.saved(coupons);
+            entityManager.flush();
+            entityManager.clear();
+            return coupons.stream().map(Coupon::getId).toList();
+        });
+    }
+
+    /** Null if the request is a valid coupon, otherwise why not; shared with the campaign simulator. */
+    String validate(CouponDtos.CreateCouponRequest req) {
+        Set<ConstraintViolation<CouponDtos.CreateCouponRequest>> violations = validator.validate(req);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+        CouponDtos.Details d = req.getDetails();
+        switch (req.getType()) {
+            case CART_WISE -> { if (d.getThreshold() == null || d.getDiscount() == null) return "cart-wise coupons need threshold and discount"; }
+            case PRODUCT_WISE -> { if (d.getProduct_id() == null || d.getDiscount() == null) return "product-wise coupons need product_id and discount"; }
+            case BXGY -> {
+                if (d.getBuy_products() == null || d.getBuy_products().isEmpty() || d.getGet_products() == null || d.getGet_products().isEmpty()) {
+                    return "bxgy coupons need buy_products and get_products";
+                }
+            }
+        }
+        if (req.getStart_date() != null && req.getExpiry_date() != null && req.getStart_date().isAfter(req.getExpiry_date())) {
+            return "start_date is after expiry_date";
+        }
+        return null;
+    }
+
+    private static final class Report {
+        long imported;
+        long failed;
+        final List<Map<String, Object>> errors = new ArrayList<>();
+
+        void fail(long line, String error) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("line", line);
+                entry.put("error", error);
+                errors.add(entry);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> resp = new LinkedHashMap<>();
+            resp.put("imported", imported);
+            resp.put("failed", failed);
+            resp.put("errors", errors);
+            return resp;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.monkcommerce.couponapi.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.repository.CouponRepository;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Listing that never materializes the whole table: keyset pages for the API, and a streamed
+ * NDJSON export that detaches each row once written so memory stays flat.
+ */
+@Service
+public class CouponListingService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int FLUSH_EVERY = 500;
+
+    private final CouponRepository couponRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter rowWriter;
+    private final Clock clock;
+
+    public CouponListingService(CouponRepository couponRepository, EntityManager entityManager, ObjectMapper objectMapper,
+                                Clock clock) {
+        this.couponRepository = couponRepository;
+        this.clock = clock;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.rowWriter = objectMapper.writerFor(Coupon.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /** Filters shared by paging and export; {@code active} null means no expiry filter. */
+    public record Filter(CouponType type, Boolean active) {
+        LocalDate activeOn(LocalDate today) { return Boolean.TRUE.equals(active) ? today : null; }
+        LocalDate expiredBefore(LocalDate today) { return Boolean.FALSE.equals(active) ? today : null; }
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> page(Long after, int limit, Filter filter) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        LocalDate today = LocalDate.now(clock);
+        List<Coupon> coupons = couponRepository.findPage(after != null ? after : 0L, filter.type(),
+                filter.activeOn(today), filter.expiredBefore(today), PageRequest.ofSize(limit));
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("coupons", coupons);
+        resp.put("next_cursor", coupons.size() == limit ? coupons.get(coupons.size() - 1).getId() : null);
+        return resp;
+    }
+
+    /** Writes one JSON coupon per line, in id order, flushing as it goes. */
+    @Transactional(readOnly = true)
+    public void exportNdjson(Filter filter, OutputStream out) throws IOException {
+        LocalDate today = LocalDate.now(clock);
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.setRootValueSeparator(null);
+        try (Stream<Coupon> rows = couponRepository.streamFiltered(0L, filter.type(), filter.activeOn(today), filter.expiredBefore(today))) {
+            int written = 0;
+            for (Coupon coupon : (Iterable<Coupon>) rows::iterator) {
+                rowWriter.writeValue(json, coupon);
+                json.writeRaw('\n');
+                entityManager.detach(coupon);
+                if (++written % FLUSH_EVERY == 0) json.flush();
+            }
+        }
+        json.flush();
+    }
+}
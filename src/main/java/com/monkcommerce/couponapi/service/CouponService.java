@@ -1,39 +1,73 @@
 package com.monkcommerce.couponapi.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monkcommerce.couponapi.catalog.CatalogSnapshot;
+import com.monkcommerce.couponapi.catalog.CompiledCoupon;
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
+import com.monkcommerce.couponapi.catalog.CouponChangeLog;
+import com.monkcommerce.couponapi.dto.ApplyCouponResponse;
 import com.monkcommerce.couponapi.dto.CartDto;
 import com.monkcommerce.couponapi.dto.CouponDtos;
 import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.metrics.CouponMetrics;
 import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.pricing.CompiledCart;
+import com.monkcommerce.couponapi.pricing.FixedPointCart;
+import com.monkcommerce.couponapi.repository.CouponCodeRepository;
 import com.monkcommerce.couponapi.repository.CouponRepository;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
-import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Service
 public class CouponService {
 
     private final CouponRepository couponRepository;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CouponCodeRepository couponCodeRepository;
+    private final CouponCatalog couponCatalog;
+    private final CouponChangeLog couponChangeLog;
+    private final CouponMetrics couponMetrics;
+    private final ApplicableCouponCache resultCache;
+    private final RedemptionLimiter redemptionLimiter;
+    // Evaluate discounts with long minor units instead of BigDecimal (same results, fewer allocations).
+    private final boolean fixedPointPricing;
 
-    public CouponService(CouponRepository couponRepository) {
+    public CouponService(CouponRepository couponRepository, CouponCodeRepository couponCodeRepository,
+                         CouponCatalog couponCatalog, CouponChangeLog couponChangeLog, CouponMetrics couponMetrics,
+                         ApplicableCouponCache resultCache, RedemptionLimiter redemptionLimiter,
+                         @Value("${coupon.pricing.fixed-point:false}") boolean fixedPointPricing) {
         this.couponRepository = couponRepository;
+        this.couponCodeRepository = couponCodeRepository;
+        this.couponCatalog = couponCatalog;
+        this.couponChangeLog = couponChangeLog;
+        this.couponMetrics = couponMetrics;
+        this.resultCache = resultCache;
+        this.redemptionLimiter = redemptionLimiter;
+        this.fixedPointPricing = fixedPointPricing;
     }
 
     @Transactional
     public Coupon create(CouponDtos.CreateCouponRequest req) {
+        Coupon saved = couponRepository.save(newCoupon(req));
+        couponChangeLog.saved(List.of(saved));
+        couponCatalog.onSaved(saved);
+        return saved;
+    }
+
+    static Coupon newCoupon(CouponDtos.CreateCouponRequest req) {
         Coupon coupon = new Coupon();
         coupon.setName(req.getName());
         coupon.setType(req.getType());
-        coupon.setDetailsJson(writeJson(req.getDetails()));
+        coupon.setDetails(req.getDetails());
+        coupon.setStartDate(req.getStart_date());
         coupon.setExpiryDate(req.getExpiry_date());
-        return couponRepository.save(coupon);
+        return coupon;
     }
 
     @Transactional
@@ -41,25 +75,27 @@ public class CouponService {
         Coupon coupon = couponRepository.findById(id).orElseThrow(() -> new NoSuchElementException("Coupon not found"));
         coupon.setName(req.getName());
         coupon.setType(req.getType());
-        coupon.setDetailsJson(writeJson(req.getDetails()));
+        coupon.setDetails(req.getDetails());
+        coupon.setDetailsJson(null);
+        coupon.setStartDate(req.getStart_date());
         coupon.setExpiryDate(req.getExpiry_date());
-        return couponRepository.save(coupon);
+        Coupon saved = couponRepository.save(coupon);
+        couponChangeLog.saved(List.of(saved));
+        couponCatalog.onSaved(saved);
+        return saved;
     }
 
     public List<Coupon> list() { return couponRepository.findAll(); }
 
     public Coupon get(Long id) { return couponRepository.findById(id).orElseThrow(() -> new NoSuchElementException("Coupon not found")); }
 
-    public void delete(Long id) { couponRepository.deleteById(id); }
-
-    private String writeJson(Object obj) {
-        try { return objectMapper.writeValueAsString(obj); }
-        catch (JsonProcessingException e) { throw new RuntimeException(e); }
-    }
-
-    private CouponDtos.Details readDetails(Coupon coupon) {
-        try { return objectMapper.readValue(coupon.getDetailsJson(), CouponDtos.Details.class); }
-        catch (JsonProcessingException e) { throw new RuntimeException(e); }
+    /** Deletes the coupon and its single-use codes; archiving keeps the codes for a restore. */
+    @Transactional
+    public void delete(Long id) {
+        couponRepository.deleteById(id);
+        couponCodeRepository.deleteByCouponId(id);
+        couponChangeLog.deleted(id);
+        couponCatalog.onDeleted(id);
     }
 
     public BigDecimal cartTotal(CartDto cart) {
@@ -69,59 +105,177 @@ public class CouponService {
     }
 
     public List<Map<String, Object>> applicableCoupons(CartDto cart) {
-        BigDecimal total = cartTotal(cart);
+        return applicableCoupons(cart, couponCatalog.snapshot());
+    }
+
+    /** Evaluates against a caller-held snapshot, so several carts can share one consistent catalog view. */
+    public List<Map<String, Object>> applicableCoupons(CartDto cart, CatalogSnapshot snapshot) {
+        long start = System.nanoTime();
+        List<Map<String, Object>> result = resultCache.get(snapshot, cart, () -> score(match(cart, snapshot)));
+        couponMetrics.applicable(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Same result as {@link #applicableCoupons(CartDto)}, run as three stages on {@code executor}:
+     * take a catalog snapshot (loads it from the database on first use), match candidates, score them.
+     * With the result cache on, match and score run as one stage through the cache.
+     */
+    public CompletableFuture<List<Map<String, Object>>> applicableCouponsAsync(CartDto cart, Executor executor) {
+        long start = System.nanoTime();
+        CompletableFuture<CatalogSnapshot> snapshot = CompletableFuture.supplyAsync(couponCatalog::snapshot, executor);
+        CompletableFuture<List<Map<String, Object>>> result = resultCache.enabled()
+                ? snapshot.thenApplyAsync(s -> resultCache.get(s, cart, () -> score(match(cart, s))), executor)
+                : snapshot.thenApplyAsync(s -> match(cart, s), executor).thenApplyAsync(this::score, executor);
+        return result.whenComplete((r, failure) -> couponMetrics.applicable(System.nanoTime() - start));
+    }
+
+    private record Match(CompiledCart cart, FixedPointCart fixed, List<CompiledCoupon> candidates) { }
+
+    // The cart is compiled once here and shared by every evaluator. Candidates come from the
+    // snapshot's index of active coupons, so no per-coupon date check is needed.
+    private Match match(CartDto cart, CatalogSnapshot snapshot) {
+        CompiledCart compiled = CompiledCart.of(cart);
+        FixedPointCart fixed = fixedPointPricing ? FixedPointCart.of(compiled) : null;
+        couponMetrics.cartLines(cart.getItems().size());
+        return new Match(compiled, fixed, snapshot.candidates(compiled));
+    }
+
+    private List<Map<String, Object>> score(Match m) {
         List<Map<String, Object>> result = new ArrayList<>();
-        for (Coupon coupon : couponRepository.findAll()) {
-            if (isExpired(coupon)) continue;
-            CouponDtos.Details d = readDetails(coupon);
-            BigDecimal discount = switch (coupon.getType()) {
-                case CART_WISE -> applicableCartWise(total, d);
-                case PRODUCT_WISE -> applicableProductWise(cart, d);
-                case BXGY -> applicableBxGy(cart, d);
-            };
-            if (discount.compareTo(BigDecimal.ZERO) > 0) {
-                Map<String, Object> map = new LinkedHashMap<>();
-                map.put("coupon_id", coupon.getId());
-                map.put("type", coupon.getType().name().toLowerCase());
-                map.put("discount", discount);
-                result.add(map);
-            }
+        for (CompiledCoupon coupon : m.candidates()) {
+            BigDecimal discount = measuredEvaluate(coupon, m.fixed(), m.cart());
+            if (discount.compareTo(BigDecimal.ZERO) > 0) result.add(applicableEntry(coupon, discount));
         }
+        couponMetrics.candidates(m.candidates().size(), result.size());
         return result;
     }
 
-    private boolean isExpired(Coupon coupon) {
-        LocalDate expiry = coupon.getExpiryDate();
-        return expiry != null && LocalDate.now().isAfter(expiry);
+    private BigDecimal measuredEvaluate(CompiledCoupon coupon, FixedPointCart fixed, CompiledCart cart) {
+        if (!couponMetrics.perCouponTimers()) return fixed != null ? evaluate(coupon, fixed) : evaluate(coupon, cart);
+        long start = System.nanoTime();
+        BigDecimal discount = fixed != null ? evaluate(coupon, fixed) : evaluate(coupon, cart);
+        couponMetrics.evaluated(coupon.type(), System.nanoTime() - start);
+        return discount;
     }
 
-    private BigDecimal applicableCartWise(BigDecimal total, CouponDtos.Details d) {
-        if (d.getThreshold() == null || d.getDiscount() == null) return BigDecimal.ZERO;
-        if (total.compareTo(d.getThreshold()) <= 0) return BigDecimal.ZERO;
-        return total.multiply(d.getDiscount()).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+    /**
+     * The {@code k} largest discounts for the cart, best first (ties by coupon id). Candidates are
+     * visited in order of a cheap upper bound, and the scan stops once no remaining bound can beat
+     * the current k-th best, so most coupons are never fully evaluated.
+     */
+    public List<Map<String, Object>> bestCoupons(CartDto cart, int k) {
+        if (k < 1) throw new IllegalArgumentException("k must be at least 1");
+        Match m = match(cart, couponCatalog.snapshot());
+        FixedPointCart fixed = m.fixed();
+        List<CompiledCoupon> candidates = m.candidates();
+
+        DiscountBounds bounds = new DiscountBounds(m.cart());
+        int n = candidates.size();
+        double[] bound = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            bound[i] = bounds.upperBound(candidates.get(i));
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(bound[b], bound[a]));
+
+        // Min-heap on discount; among equal discounts the larger id is evicted first.
+        Comparator<Map.Entry<CompiledCoupon, BigDecimal>> worstFirst = Map.Entry.<CompiledCoupon, BigDecimal>comparingByValue()
+                .thenComparing(e -> e.getKey().id(), Comparator.reverseOrder());
+        PriorityQueue<Map.Entry<CompiledCoupon, BigDecimal>> heap = new PriorityQueue<>(Math.min(k, n) + 1, worstFirst);
+        int scanned = 0;
+        int matched = 0;
+        for (Integer i : order) {
+            if (heap.size() == k && bound[i] < heap.peek().getValue().doubleValue()) break;
+            CompiledCoupon coupon = candidates.get(i);
+            scanned++;
+            BigDecimal discount = measuredEvaluate(coupon, fixed, m.cart());
+            if (discount.compareTo(BigDecimal.ZERO) <= 0) continue;
+            matched++;
+            heap.offer(Map.entry(coupon, discount));
+            if (heap.size() > k) heap.poll();
+        }
+        couponMetrics.candidates(scanned, matched);
+
+        List<Map.Entry<CompiledCoupon, BigDecimal>> best = new ArrayList<>(heap);
+        best.sort(worstFirst.reversed());
+        List<Map<String, Object>> result = new ArrayList<>(best.size());
+        for (Map.Entry<CompiledCoupon, BigDecimal> e : best) result.add(applicableEntry(e.getKey(), e.getValue()));
+        return result;
     }
 
-    private BigDecimal applicableProductWise(CartDto cart, CouponDtos.Details d) {
-        if (d.getProduct_id() == null || d.getDiscount() == null) return BigDecimal.ZERO;
-        return cart.getItems().stream()
-                .filter(i -> i.getProduct_id().equals(d.getProduct_id()))
-                .findFirst()
-                .map(i -> i.getPrice().multiply(BigDecimal.valueOf(i.getQuantity()))
-                        .multiply(d.getDiscount()).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP))
-                .orElse(BigDecimal.ZERO);
+    static Map<String, Object> applicableEntry(CompiledCoupon coupon, BigDecimal discount) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("coupon_id", coupon.id());
+        map.put("type", coupon.type().name().toLowerCase());
+        map.put("discount", discount);
+        return Collections.unmodifiableMap(map);
+    }
+
+    BigDecimal evaluate(CompiledCoupon coupon, CompiledCart cart) {
+        return switch (coupon.type()) {
+            case CART_WISE -> applicableCartWise(cart.total(), coupon);
+            case PRODUCT_WISE -> applicableProductWise(cart, coupon);
+            case BXGY -> applicableBxGy(cart, coupon);
+        };
+    }
+
+    BigDecimal evaluate(CompiledCoupon coupon, FixedPointCart fixed) {
+        try {
+            long units = switch (coupon.type()) {
+                case CART_WISE -> fixed.cartWise(coupon);
+                case PRODUCT_WISE -> fixed.productWise(coupon);
+                case BXGY -> fixed.bxGy(coupon);
+            };
+            return fixed.toDecimal(coupon, units);
+        } catch (ArithmeticException overflow) {
+            return evaluate(coupon, fixed.cart());
+        }
+    }
+
+    private BigDecimal applicableCartWise(BigDecimal total, CompiledCoupon c) {
+        if (c.threshold() == null || c.discountRate() == null) return BigDecimal.ZERO;
+        if (total.compareTo(c.threshold()) <= 0) return BigDecimal.ZERO;
+        return percentOf(total, c);
     }
 
-    private BigDecimal applicableBxGy(CartDto cart, CouponDtos.Details d) {
-        if (d.getBuy_products() == null || d.getGet_products() == null) return BigDecimal.ZERO;
-        int repetitions = computeBxGyRepetitions(cart, d);
-        if (d.getRepetition_limit() != null) repetitions = Math.min(repetitions, d.getRepetition_limit());
+    private BigDecimal applicableProductWise(CompiledCart cart, CompiledCoupon c) {
+        if (c.productId() == null || c.discountRate() == null) return BigDecimal.ZERO;
+        int slot = cart.find(c.productId());
+        if (slot < 0) return BigDecimal.ZERO;
+        CartDto.CartItemDto i = cart.firstLine(slot);
+        return percentOf(i.getPrice().multiply(BigDecimal.valueOf(i.getQuantity())), c);
+    }
+
+    // Same value and scale as amount * discount / 100 rounded HALF_UP to 2 places.
+    private static BigDecimal percentOf(BigDecimal amount, CompiledCoupon c) {
+        return amount.multiply(c.discountRate()).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private BigDecimal applicableBxGy(CompiledCart cart, CompiledCoupon c) {
+        if (c.buyProducts() == null || c.getProducts() == null) return BigDecimal.ZERO;
+        int repetitions = bxGyRepetitions(c, cart, null);
         if (repetitions <= 0) return BigDecimal.ZERO;
+        return bxGyFreeValue(c, cart, repetitions);
+    }
+
+    /**
+     * Repetition count after the coupon's limit. {@code available} holds the quantity left per slot
+     * of {@code cart}; null means the cart's own last-line quantities.
+     */
+    int bxGyRepetitions(CompiledCoupon c, CompiledCart cart, int[] available) {
+        int repetitions = computeBxGyRepetitions(cart, available, c);
+        if (c.repetitionLimit() != null) repetitions = Math.min(repetitions, c.repetitionLimit());
+        return repetitions;
+    }
+
+    BigDecimal bxGyFreeValue(CompiledCoupon c, CompiledCart cart, int repetitions) {
         BigDecimal freeValue = BigDecimal.ZERO;
-        Map<Long, CartDto.CartItemDto> cartMap = new HashMap<>();
-        for (CartDto.CartItemDto item : cart.getItems()) cartMap.put(item.getProduct_id(), item);
-        for (CouponDtos.BuyGet get : d.getGet_products()) {
-            CartDto.CartItemDto item = cartMap.get(get.getProduct_id());
-            if (item != null) {
+        for (CouponDtos.BuyGet get : c.getProducts()) {
+            int slot = cart.find(get.getProduct_id());
+            if (slot >= 0) {
+                CartDto.CartItemDto item = cart.lastLine(slot);
                 int freeQty = get.getQuantity() * repetitions;
                 BigDecimal itemValue = item.getPrice().multiply(BigDecimal.valueOf(freeQty));
                 freeValue = freeValue.add(itemValue);
@@ -130,68 +284,91 @@ public class CouponService {
         return freeValue;
     }
 
-    private int computeBxGyRepetitions(CartDto cart, CouponDtos.Details d) {
-        Map<Long, Integer> counts = new HashMap<>();
-        for (CartDto.CartItemDto item : cart.getItems()) counts.put(item.getProduct_id(), item.getQuantity());
+    private int computeBxGyRepetitions(CompiledCart cart, int[] available, CompiledCoupon c) {
         int times = Integer.MAX_VALUE;
-        if (d.getBuy_products() == null || d.getBuy_products().isEmpty()) return 0;
-        for (CouponDtos.BuyGet buy : d.getBuy_products()) {
-            int available = counts.getOrDefault(buy.getProduct_id(), 0);
-            times = Math.min(times, available / buy.getQuantity());
+        if (c.buyProducts() == null || c.buyProducts().isEmpty()) return 0;
+        for (CouponDtos.BuyGet buy : c.buyProducts()) {
+            int slot = cart.find(buy.getProduct_id());
+            int left = slot < 0 ? 0 : available != null ? available[slot] : cart.lastQuantity(slot);
+            times = Math.min(times, left / buy.getQuantity());
         }
         if (times == Integer.MAX_VALUE) return 0;
         return times;
     }
 
-    public Map<String, Object> applyCoupon(Long id, CartDto cart) {
-        Coupon coupon = get(id);
-        if (isExpired(coupon)) {
-            throw new IllegalArgumentException("Coupon has expired");
+    public ApplyCouponResponse applyCoupon(Long id, CartDto cart) {
+        return applyCoupon(id, cart, null);
+    }
+
+    /**
+     * Applies one coupon and returns the per-line breakdown. BxGy repetitions are computed once for
+     * the whole cart, and each line is visited once. For a coupon with redemption limits, a slot is
+     * reserved first and counted only if the coupon gives a discount.
+     */
+    public ApplyCouponResponse applyCoupon(Long id, CartDto cart, String userId) {
+        long start = System.nanoTime();
+        try {
+            CatalogSnapshot snapshot = couponCatalog.snapshot();
+            CompiledCoupon coupon = snapshot.get(id);
+            if (coupon == null) throw new NoSuchElementException("Coupon not found");
+            if (!snapshot.isActive(coupon)) {
+                throw new IllegalArgumentException(coupon.isExpired(snapshot.asOf()) ? "Coupon has expired" : "Coupon is not active yet");
+            }
+            if (!coupon.hasRedemptionLimit()) return apply(coupon, cart);
+
+            RedemptionLimiter.Reservation reservation = redemptionLimiter.reserve(coupon, userId);
+            ApplyCouponResponse response;
+            try {
+                response = apply(coupon, cart);
+            } catch (RuntimeException e) {
+                reservation.release();
+                throw e;
+            }
+            BigDecimal discount = response.updated_cart().total_discount();
+            if (discount.signum() > 0) reservation.commit(discount);
+            else reservation.release();
+            return response;
+        } finally {
+            couponMetrics.apply(System.nanoTime() - start);
         }
-        CouponDtos.Details d = readDetails(coupon);
-        Map<String, Object> response = new LinkedHashMap<>();
-
-        BigDecimal totalPrice = cartTotal(cart);
-        BigDecimal totalDiscount = switch (coupon.getType()) {
-            case CART_WISE -> applicableCartWise(totalPrice, d);
-            case PRODUCT_WISE -> applicableProductWise(cart, d);
-            case BXGY -> applicableBxGy(cart, d);
-        };
+    }
+
+    private ApplyCouponResponse apply(CompiledCoupon coupon, CartDto cart) {
+
+        CompiledCart compiled = CompiledCart.of(cart);
+        FixedPointCart fixed = fixedPointPricing ? FixedPointCart.of(compiled) : null;
+        BigDecimal totalPrice = fixed != null ? fixed.total() : compiled.total();
+        BigDecimal totalDiscount;
+        int reps = 0;
+        if (coupon.type() == CouponType.BXGY) {
+            reps = Math.max(bxGyRepetitions(coupon, compiled, null), 0);
+            totalDiscount = coupon.buyProducts() == null || coupon.getProducts() == null || reps == 0
+                    ? BigDecimal.ZERO : bxGyFreeValue(coupon, compiled, reps);
+        } else {
+            totalDiscount = fixed != null ? evaluate(coupon, fixed) : evaluate(coupon, compiled);
+        }
+        List<CouponDtos.BuyGet> gets = coupon.getProducts() != null ? coupon.getProducts() : List.of();
 
-        List<Map<String, Object>> items = new ArrayList<>();
+        List<ApplyCouponResponse.Item> items = new ArrayList<>(cart.getItems().size());
         for (CartDto.CartItemDto i : cart.getItems()) {
-            Map<String, Object> it = new LinkedHashMap<>();
-            it.put("product_id", i.getProduct_id());
-            it.put("quantity", i.getQuantity());
-            it.put("price", i.getPrice());
+            int quantity = i.getQuantity();
             BigDecimal itemDiscount = BigDecimal.ZERO;
-            if (coupon.getType() == CouponType.PRODUCT_WISE && Objects.equals(d.getProduct_id(), i.getProduct_id())) {
-                itemDiscount = i.getPrice().multiply(BigDecimal.valueOf(i.getQuantity()))
-                        .multiply(d.getDiscount()).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+            if (coupon.type() == CouponType.PRODUCT_WISE && Objects.equals(coupon.productId(), i.getProduct_id())) {
+                itemDiscount = percentOf(i.getPrice().multiply(BigDecimal.valueOf(i.getQuantity())), coupon);
             }
-            if (coupon.getType() == CouponType.BXGY) {
-                int reps = computeBxGyRepetitions(cart, d);
-                if (d.getRepetition_limit() != null) reps = Math.min(reps, d.getRepetition_limit());
-                for (CouponDtos.BuyGet get : Optional.ofNullable(d.getGet_products()).orElse(List.of())) {
+            if (coupon.type() == CouponType.BXGY) {
+                for (CouponDtos.BuyGet get : gets) {
                     if (Objects.equals(get.getProduct_id(), i.getProduct_id())) {
-                        int freeQty = get.getQuantity() * Math.max(reps, 0);
+                        int freeQty = get.getQuantity() * reps;
                         itemDiscount = itemDiscount.add(i.getPrice().multiply(BigDecimal.valueOf(freeQty)));
-                        it.put("quantity", i.getQuantity() + freeQty);
+                        quantity = i.getQuantity() + freeQty;
                     }
                 }
             }
-            it.put("total_discount", itemDiscount);
-            items.add(it);
+            items.add(new ApplyCouponResponse.Item(i.getProduct_id(), quantity, i.getPrice(), itemDiscount));
         }
 
-        response.put("updated_cart", Map.of(
-                "items", items,
-                "total_price", totalPrice,
-                "total_discount", totalDiscount,
-                "final_price", totalPrice.subtract(totalDiscount)
-        ));
-        return response;
+        return new ApplyCouponResponse(new ApplyCouponResponse.UpdatedCart(
+                items, totalPrice, totalDiscount, totalPrice.subtract(totalDiscount)));
     }
 }
-
-
@@ -0,0 +1,249 @@
+package com.monkcommerce.couponapi.service;
+
+import com.monkcommerce.couponapi.catalog.CatalogSnapshot;
+import com.monkcommerce.couponapi.catalog.CompiledCoupon;
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.pricing.CompiledCart;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Finds the combination of coupons with the largest total discount for a cart.
+ *
+ * <p>Stacking rules: discounts add up, each computed by the regular evaluators on the original
+ * prices; at most one CART_WISE coupon and at most one PRODUCT_WISE coupon per product; BxGy coupons
+ * consume their buy quantities, so a later BxGy only sees what earlier ones left; an exclusive
+ * coupon is only ever used on its own.
+ *
+ * <p>Cart-wise and product-wise choices do not interact with anything else, so their best picks are
+ * taken directly. Only BxGy coupons are searched, one group of coupons sharing buy products at a
+ * time, depth-first in descending standalone value, pruning any branch whose value plus the
+ * standalone values still ahead cannot beat the best found. When the time budget runs out the best
+ * combination so far is returned, flagged as not optimal. A requested budget is capped at
+ * {@code coupon.stacking.max-time-budget-ms}, since the search runs on the request thread.
+ */
+@Service
+public class CouponStackingSolver {
+
+    private final CouponService couponService;
+    private final CouponCatalog couponCatalog;
+    private final long defaultBudgetMillis;
+    private final long maxBudgetMillis;
+
+    public CouponStackingSolver(CouponService couponService, CouponCatalog couponCatalog,
+                                @Value("${coupon.stacking.time-budget-ms:5}") long defaultBudgetMillis,
+                                @Value("${coupon.stacking.max-time-budget-ms:50}") long maxBudgetMillis) {
+        this.couponService = couponService;
+        this.couponCatalog = couponCatalog;
+        this.defaultBudgetMillis = Math.min(defaultBudgetMillis, maxBudgetMillis);
+        this.maxBudgetMillis = maxBudgetMillis;
+    }
+
+    /**
+     * @param budgetMillis search budget, or null for the default; values above the maximum are capped
+     * @throws IllegalArgumentException if the budget is negative
+     */
+    public Map<String, Object> bestCombination(CartDto cart, Long budgetMillis) {
+        if (budgetMillis != null && budgetMillis < 0) throw new IllegalArgumentException("budget_ms must not be negative");
+        long budget = budgetMillis != null ? Math.min(budgetMillis, maxBudgetMillis) : defaultBudgetMillis;
+        long deadline = System.nanoTime() + budget * 1_000_000L;
+        CompiledCart compiled = CompiledCart.of(cart);
+        BigDecimal totalPrice = compiled.total();
+        CatalogSnapshot snapshot = couponCatalog.snapshot();
+
+        Selection bestExclusive = null;
+        Selection cartWise = null;
+        Map<Long, Selection> productWise = new HashMap<>();
+        List<Selection> bxGy = new ArrayList<>();
+        for (CompiledCoupon coupon : snapshot.candidates(compiled)) {
+            BigDecimal discount = couponService.evaluate(coupon, compiled);
+            if (discount.compareTo(BigDecimal.ZERO) <= 0) continue;
+            Selection s = new Selection(coupon, discount);
+            if (coupon.exclusive()) {
+                if (s.beats(bestExclusive)) bestExclusive = s;
+                continue;
+            }
+            switch (coupon.type()) {
+                case CART_WISE -> { if (s.beats(cartWise)) cartWise = s; }
+                case PRODUCT_WISE -> productWise.merge(coupon.productId(), s, (a, b) -> b.beats(a) ? b : a);
+                case BXGY -> bxGy.add(s);
+            }
+        }
+
+        List<Selection> stacked = new ArrayList<>();
+        boolean timedOut = false;
+        for (List<Selection> group : independentGroups(bxGy)) {
+            BxGySearch search = new BxGySearch(compiled, group, deadline);
+            search.run();
+            stacked.addAll(search.best);
+            timedOut |= search.timedOut;
+        }
+        if (cartWise != null) stacked.add(cartWise);
+        stacked.addAll(productWise.values());
+        BigDecimal stackedTotal = sum(stacked);
+        List<Selection> chosen = bestExclusive != null && bestExclusive.discount.compareTo(stackedTotal) > 0
+                ? List.of(bestExclusive) : stacked;
+        chosen = new ArrayList<>(chosen);
+        chosen.sort(Comparator.comparing(s -> s.coupon.id()));
+
+        List<Map<String, Object>> coupons = new ArrayList<>();
+        for (Selection s : chosen) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("coupon_id", s.coupon.id());
+            map.put("type", s.coupon.type().name().toLowerCase());
+            map.put("discount", s.discount);
+            coupons.add(map);
+        }
+        BigDecimal totalDiscount = sum(chosen);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("coupons", coupons);
+        response.put("total_price", totalPrice);
+        response.put("total_discount", totalDiscount);
+        response.put("final_price", totalPrice.subtract(totalDiscount));
+        response.put("optimal", !timedOut);
+        return response;
+    }
+
+    // BxGy coupons with no buy product in common (even transitively) never compete, so each group is searched alone.
+    private static Collection<List<Selection>> independentGroups(List<Selection> bxGy) {
+        Map<Long, Long> parent = new HashMap<>();
+        for (Selection s : bxGy) {
+            Long first = null;
+            for (CouponDtos.BuyGet buy : s.coupon.buyProducts()) {
+                Long root = find(parent, buy.getProduct_id());
+                if (first == null) first = root;
+                else if (!root.equals(first)) parent.put(root, first);
+            }
+        }
+        Map<Long, List<Selection>> groups = new LinkedHashMap<>();
+        for (Selection s : bxGy) {
+            Long root = find(parent, s.coupon.buyProducts().get(0).getProduct_id());
+            groups.computeIfAbsent(root, k -> new ArrayList<>()).add(s);
+        }
+        return groups.values();
+    }
+
+    private static Long find(Map<Long, Long> parent, Long productId) {
+        Long root = productId;
+        for (Long p = parent.get(root); p != null; p = parent.get(root)) root = p;
+        if (!root.equals(productId)) parent.put(productId, root);
+        return root;
+    }
+
+    private static BigDecimal sum(List<Selection> selections) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Selection s : selections) total = total.add(s.discount);
+        return total;
+    }
+
+    private static final class Selection {
+        final CompiledCoupon coupon;
+        final BigDecimal discount;
+
+        Selection(CompiledCoupon coupon, BigDecimal discount) {
+            this.coupon = coupon;
+            this.discount = discount;
+        }
+
+        boolean beats(Selection other) {
+            if (other == null) return true;
+            int cmp = discount.compareTo(other.discount);
+            return cmp > 0 || (cmp == 0 && coupon.id() < other.coupon.id());
+        }
+    }
+
+    private record Step(CompiledCoupon coupon, BigDecimal value, int repetitions) { }
+
+    /** Branch-and-bound over which BxGy coupons to take, with buy quantities as the shared resource. */
+    private final class BxGySearch {
+        private static final int CLOCK_CHECK_INTERVAL = 256;
+
+        private final CompiledCart cart;
+        // Buy quantity not yet consumed, per product slot of the cart.
+        private final int[] remaining;
+        private final List<Selection> options;
+        // suffix[i] = sum of standalone discounts of options[i..]; standalone is the most any option can add.
+        private final BigDecimal[] suffix;
+        private final long deadline;
+        private final Deque<Step> path = new ArrayDeque<>();
+        private BigDecimal pathValue = BigDecimal.ZERO;
+        private BigDecimal bestValue = BigDecimal.ZERO;
+        private List<Selection> best = List.of();
+        private long nodes;
+        private boolean timedOut;
+
+        BxGySearch(CompiledCart cart, List<Selection> options, long deadline) {
+            this.cart = cart;
+            this.remaining = cart.lastQuantities();
+            this.options = new ArrayList<>(options);
+            this.options.sort((a, b) -> a.beats(b) ? -1 : b.beats(a) ? 1 : 0);
+            this.suffix = new BigDecimal[this.options.size() + 1];
+            suffix[this.options.size()] = BigDecimal.ZERO;
+            for (int i = this.options.size() - 1; i >= 0; i--) suffix[i] = suffix[i + 1].add(this.options.get(i).discount);
+            this.deadline = deadline;
+        }
+
+        void run() {
+            // Greedy pass first so pruning starts from a good incumbent even if time runs out early.
+            for (int i = 0; i < options.size(); i++) take(i);
+            record();
+            while (!path.isEmpty()) untake();
+            search(0);
+        }
+
+        private void search(int i) {
+            if (timedOut) return;
+            if (++nodes % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                timedOut = true;
+                return;
+            }
+            if (pathValue.add(suffix[i]).compareTo(bestValue) <= 0) return;
+            if (i == options.size()) {
+                record();
+                return;
+            }
+            if (take(i)) {
+                search(i + 1);
+                untake();
+            }
+            search(i + 1);
+        }
+
+        // Applies options[i] to the residual cart; false if it would free nothing there.
+        private boolean take(int i) {
+            CompiledCoupon c = options.get(i).coupon;
+            int repetitions = couponService.bxGyRepetitions(c, cart, remaining);
+            if (repetitions <= 0) return false;
+            BigDecimal value = couponService.bxGyFreeValue(c, cart, repetitions);
+            if (value.compareTo(BigDecimal.ZERO) <= 0) return false;
+            // Every buy product is in the cart, or there would be no repetition.
+            for (CouponDtos.BuyGet buy : c.buyProducts()) {
+                remaining[cart.find(buy.getProduct_id())] -= buy.getQuantity() * repetitions;
+            }
+            path.push(new Step(c, value, repetitions));
+            pathValue = pathValue.add(value);
+            return true;
+        }
+
+        private void untake() {
+            Step taken = path.pop();
+            for (CouponDtos.BuyGet buy : taken.coupon().buyProducts()) {
+                remaining[cart.find(buy.getProduct_id())] += buy.getQuantity() * taken.repetitions();
+            }
+            pathValue = pathValue.subtract(taken.value());
+        }
+
+        private void record() {
+            if (pathValue.compareTo(bestValue) > 0) {
+                bestValue = pathValue;
+                best = path.stream().map(step -> new Selection(step.coupon(), step.value())).toList();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.monkcommerce.couponapi.service;
+
+import com.monkcommerce.couponapi.catalog.CompiledCoupon;
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.pricing.CompiledCart;
+
+/**
+ * Cheap double-precision upper bounds on what a coupon can take off a cart, used to skip full
+ * BigDecimal evaluation of coupons that cannot make a top-k list. Bounds are padded by a cent
+ * plus a relative epsilon so rounding never makes them smaller than the exact discount.
+ */
+final class DiscountBounds {
+
+    private static final double PAD = 0.01;
+    private static final double EPSILON = 1e-9;
+
+    private final double total;
+    // Mirrors the evaluators: product-wise reads the first line for a product, BxGy the last.
+    private final CompiledCart cart;
+
+    DiscountBounds(CompiledCart cart) {
+        this.total = cart.total().doubleValue();
+        this.cart = cart;
+    }
+
+    double upperBound(CompiledCoupon c) {
+        double bound = switch (c.type()) {
+            case CART_WISE -> c.discount() == null ? 0 : total * c.discount().doubleValue() / 100;
+            case PRODUCT_WISE -> productWise(c);
+            case BXGY -> bxGy(c);
+        };
+        return bound * (1 + EPSILON) + PAD;
+    }
+
+    private double productWise(CompiledCoupon c) {
+        int slot = c.productId() == null || c.discount() == null ? -1 : cart.find(c.productId());
+        if (slot < 0) return 0;
+        CartDto.CartItemDto line = cart.firstLine(slot);
+        return line.getPrice().doubleValue() * line.getQuantity() * c.discount().doubleValue() / 100;
+    }
+
+    private double bxGy(CompiledCoupon c) {
+        if (c.buyProducts() == null || c.buyProducts().isEmpty() || c.getProducts() == null) return 0;
+        long repetitions = Long.MAX_VALUE;
+        for (CouponDtos.BuyGet buy : c.buyProducts()) {
+            int slot = cart.find(buy.getProduct_id());
+            if (slot < 0) return 0;
+            repetitions = Math.min(repetitions, cart.lastQuantity(slot) / Math.max(buy.getQuantity(), 1));
+        }
+        if (c.repetitionLimit() != null) repetitions = Math.min(repetitions, c.repetitionLimit());
+        if (repetitions <= 0) return 0;
+        double value = 0;
+        for (CouponDtos.BuyGet get : c.getProducts()) {
+            int slot = cart.find(get.getProduct_id());
+            if (slot >= 0) value += cart.lastLine(slot).getPrice().doubleValue() * get.getQuantity() * repetitions;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,103 @@
+package com.monkcommerce.couponapi.service;
+
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
+import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.repository.CouponRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.List;
+
+/**
+ * Moves rules still stored in the legacy {@code details_json} column into {@code coupon_rule},
+ * {@code coupon_buy} and {@code coupon_get}, one small transaction per batch. The catalog reads
+ * both forms, so serving is unaffected while this runs.
+ *
+ * <p>Before anything is served, it also brings a database created by an older version up to date,
+ * which {@code ddl-auto: update} does not: {@code details_json} loses its {@code NOT NULL}, and
+ * {@code coupon_seq} is moved past the ids the old identity column handed out.
+ */
+@Component
+public class LegacyCouponMigration implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LegacyCouponMigration.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final CouponRepository couponRepository;
+    private final CouponCatalog couponCatalog;
+    private final TransactionOperations transactionOperations;
+    private final EntityManager entityManager;
+
+    public LegacyCouponMigration(CouponRepository couponRepository, CouponCatalog couponCatalog,
+                                 TransactionOperations transactionOperations, EntityManager entityManager) {
+        this.couponRepository = couponRepository;
+        this.couponCatalog = couponCatalog;
+        this.transactionOperations = transactionOperations;
+        this.entityManager = entityManager;
+    }
+
+    // Runs once the schema update is done and before the web server takes requests.
+    @PostConstruct
+    void upgradeSchema() {
+        transactionOperations.executeWithoutResult(status -> {
+            Object nullable = entityManager.createNativeQuery("select is_nullable from information_schema.columns "
+                    + "where lower(table_name) = 'coupon' and lower(column_name) = 'details_json'")
+                    .getResultStream().findFirst().orElse("YES");
+            if ("NO".equalsIgnoreCase(nullable.toString())) {
+                entityManager.createNativeQuery("alter table coupon alter column details_json drop not null").executeUpdate();
+                log.info("Made coupon.details_json nullable");
+            }
+        });
+        transactionOperations.executeWithoutResult(status -> {
+            long maxId = 0;
+            for (String table : List.of("coupon", "coupon_archive")) {
+                Number max = (Number) entityManager.createNativeQuery("select coalesce(max(id), 0) from " + table).getSingleResult();
+                maxId = Math.max(maxId, max.longValue());
+            }
+            if (maxId == 0) return;
+            // The pooled optimizer hands out the block ending at each value it reads, so the block after
+            // this value starts at value + 1; restarting at maxId + the block size makes it start at maxId + 1.
+            String nextValue = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices().getDialect().getSequenceSupport().getSequenceNextValString("coupon_seq");
+            long value = ((Number) entityManager.createNativeQuery(nextValue).getSingleResult()).longValue();
+            if (value >= maxId) return;
+            long restart = maxId + Coupon.ID_ALLOCATION_SIZE;
+            entityManager.createNativeQuery("alter sequence coupon_seq restart with " + restart).executeUpdate();
+            log.info("Moved coupon_seq to {}, past existing coupon id {}", restart, maxId);
+        });
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int migrated = migrate();
+        if (migrated > 0) log.info("Migrated {} coupons from details_json to normalized rule tables", migrated);
+    }
+
+    public int migrate() {
+        int migrated = 0;
+        long afterId = 0L;
+        while (true) {
+            long from = afterId;
+            List<Long> batch = transactionOperations.execute(status -> {
+                List<Coupon> coupons = couponRepository.findLegacyPage(from, PageRequest.ofSize(BATCH_SIZE));
+                for (Coupon coupon : coupons) {
+                    coupon.setDetails(couponCatalog.readDetails(coupon));
+                    coupon.setDetailsJson(null);
+                }
+                return coupons.stream().map(Coupon::getId).toList();
+            });
+            if (batch == null || batch.isEmpty()) return migrated;
+            migrated += batch.size();
+            afterId = batch.get(batch.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.monkcommerce.couponapi.service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Redemptions of one coupon this node has leased and not yet handed out, split over stripes that
+ * each sit on their own cache line, so concurrent reservations mostly CAS different words instead of
+ * one hot counter. A reservation takes a unit from the caller's home stripe and falls back to the
+ * others; stripes never go negative, so units handed out never exceed units leased.
+ *
+ * <p>A counter is retired when its coupon's limit changes or it sits idle: it then hands out
+ * nothing more, and every unit left in it or released into it later is drained exactly once, so the
+ * owner can give it back to the shared quota.
+ */
+final class RedemptionCounter {
+
+    // 8 longs = 64 bytes, one cache line per stripe.
+    private static final int PAD = 8;
+
+    private final AtomicLongArray stripes;
+    private final int stripeCount;
+    private final long limit;
+    private final AtomicBoolean retired = new AtomicBoolean();
+    // Written and read by the flusher thread only, to spot counters nobody is using.
+    long idleSeen = -1;
+    long idleSinceMillis;
+
+    RedemptionCounter(long limit, int stripeCount) {
+        this.stripeCount = stripeCount;
+        this.stripes = new AtomicLongArray(stripeCount * PAD);
+        this.limit = limit;
+    }
+
+    /** The coupon limit the units were leased against. */
+    long limit() { return limit; }
+
+    boolean retired() { return retired.get(); }
+
+    /** Takes one unit; false if none are left or the counter is retired. */
+    boolean tryAcquire() {
+        if (retired.get()) return false;
+        int home = home();
+        for (int i = 0; i < stripeCount; i++) {
+            int slot = ((home + i) % stripeCount) * PAD;
+            long v;
+            while ((v = stripes.get(slot)) > 0) {
+                if (stripes.compareAndSet(slot, v, v - 1)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Adds newly leased units. */
+    void add(long units) {
+        for (int i = 0; i < stripeCount; i++) stripes.addAndGet(i * PAD, units / stripeCount + (i < units % stripeCount ? 1 : 0));
+    }
+
+    /**
+     * Puts back a unit taken by {@link #tryAcquire()} that was not redeemed after all; returns how
+     * many units the caller must give back to the quota because the counter is retired.
+     */
+    long release() {
+        if (retired.get()) return 1;
+        stripes.incrementAndGet(home() * PAD);
+        // Retired in between: the drain may have run before the increment, so drain again.
+        return retired.get() ? drain() : 0;
+    }
+
+    /** Marks the counter retired and drains it; -1 if it was already retired. */
+    long retire() {
+        return retired.compareAndSet(false, true) ? drain() : -1;
+    }
+
+    /** Units not handed out. Not atomic; for idle detection, reporting and tests. */
+    long available() {
+        long sum = 0;
+        for (int i = 0; i < stripeCount; i++) sum += stripes.get(i * PAD);
+        return sum;
+    }
+
+    /** Empties the stripes and returns what they held; for units added after {@link #retire()}. */
+    long drain() {
+        long sum = 0;
+        for (int i = 0; i < stripeCount; i++) sum += stripes.getAndSet(i * PAD, 0);
+        return sum;
+    }
+
+    private int home() {
+        return (int) (Thread.currentThread().getId() % stripeCount);
+    }
+}
@@ -0,0 +1,314 @@
+package com.monkcommerce.couponapi.service;
+
+import com.monkcommerce.couponapi.catalog.CompiledCoupon;
+import com.monkcommerce.couponapi.entity.Redemption;
+import com.monkcommerce.couponapi.entity.RedemptionQuota;
+import com.monkcommerce.couponapi.repository.RedemptionQuotaRepository;
+import com.monkcommerce.couponapi.repository.RedemptionRepository;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Enforces {@code max_redemptions} and {@code max_redemptions_per_user} across every node sharing
+ * the database, through {@link RedemptionQuota} rows that only grow by conditional updates.
+ *
+ * <p>{@code max_redemptions}: a node leases blocks of up to {@code coupon.redemption.lease-size}
+ * units from the coupon's row and hands them out from an in-memory {@link RedemptionCounter}, so
+ * the database is written once per block rather than per redemption. A block is at most an eighth
+ * of what is left, so near the limit the last units are spread over the nodes asking for them.
+ * Units a node has not used go back to the row when the limit changes, when the counter has been
+ * idle for {@code coupon.redemption.lease-idle-ms}, and at shutdown; a node that dies holding some
+ * strands them, which can only leave the coupon under its limit.
+ *
+ * <p>{@code max_redemptions_per_user}: each reservation claims one unit of the user's row directly.
+ *
+ * <p>A row is created the first time a limit is checked, from the redemptions already recorded plus
+ * those still queued here. Committed redemptions are queued and written to {@code coupon_redemption}
+ * in batches by a background flusher.
+ */
+@Component
+public class RedemptionLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(RedemptionLimiter.class);
+    private static final int FLUSH_BATCH = 500;
+    // A lease takes at most this share of the units left.
+    private static final int LEASE_SHARE = 8;
+
+    /** A unit held against a coupon's limits until the redemption is committed or released. */
+    public interface Reservation {
+        void commit(BigDecimal discount);
+        void release();
+    }
+
+    private static final Reservation UNLIMITED = new Reservation() {
+        @Override public void commit(BigDecimal discount) { }
+        @Override public void release() { }
+    };
+
+    private final RedemptionRepository redemptionRepository;
+    private final RedemptionQuotaRepository quotaRepository;
+    private final TransactionOperations transactionOperations;
+    private final Clock clock;
+    private final int stripes;
+    private final long leaseSize;
+    private final long leaseIdleMillis;
+    private final ConcurrentHashMap<Long, RedemptionCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Redemption> pending = new ConcurrentLinkedQueue<>();
+    // Held for writing while a batch is out of the queue, so a row seeded from the database plus the
+    // queue never misses a redemption on its way between them.
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher;
+
+    public RedemptionLimiter(RedemptionRepository redemptionRepository, RedemptionQuotaRepository quotaRepository,
+                             TransactionOperations transactionOperations, Clock clock,
+                             @Value("${coupon.redemption.stripes:0}") int stripes,
+                             @Value("${coupon.redemption.flush-interval-ms:100}") long flushIntervalMillis,
+                             @Value("${coupon.redemption.lease-size:64}") long leaseSize,
+                             @Value("${coupon.redemption.lease-idle-ms:2000}") long leaseIdleMillis) {
+        this.redemptionRepository = redemptionRepository;
+        this.quotaRepository = quotaRepository;
+        this.transactionOperations = transactionOperations;
+        this.clock = clock;
+        this.stripes = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+        this.leaseSize = Math.max(1, leaseSize);
+        this.leaseIdleMillis = leaseIdleMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "redemption-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Holds one redemption of {@code coupon} for {@code userId}.
+     *
+     * @throws IllegalArgumentException if a limit is reached, or the coupon has a per-user limit and no user is given
+     */
+    public Reservation reserve(CompiledCoupon coupon, String userId) {
+        if (!coupon.hasRedemptionLimit()) return UNLIMITED;
+        Integer perUserLimit = coupon.maxRedemptionsPerUser();
+        if (perUserLimit != null && userId == null) throw new IllegalArgumentException("user_id is required for this coupon");
+
+        RedemptionCounter global = coupon.maxRedemptions() != null ? acquire(coupon.id(), coupon.maxRedemptions()) : null;
+        if (perUserLimit != null) {
+            boolean claimed;
+            try {
+                claimed = claimForUser(coupon.id(), userId, perUserLimit);
+            } catch (RuntimeException e) {
+                if (global != null) release(coupon.id(), global);
+                throw e;
+            }
+            if (!claimed) {
+                if (global != null) release(coupon.id(), global);
+                throw new IllegalArgumentException("Coupon redemption limit reached for this user");
+            }
+        }
+        return new Held(coupon.id(), perUserLimit != null ? userId : null, userId, global);
+    }
+
+    private RedemptionCounter acquire(Long couponId, long limit) {
+        while (true) {
+            RedemptionCounter counter = counter(couponId, limit);
+            if (counter.tryAcquire()) return counter;
+            if (counter.retired()) continue;
+            if (!refill(couponId, counter)) throw new IllegalArgumentException("Coupon redemption limit reached");
+        }
+    }
+
+    // A counter leased against the current limit; one leased against another limit is retired and replaced.
+    private RedemptionCounter counter(Long couponId, long limit) {
+        while (true) {
+            RedemptionCounter counter = counters.computeIfAbsent(couponId, id -> new RedemptionCounter(limit, stripes));
+            if (counter.limit() == limit && !counter.retired()) return counter;
+            RedemptionCounter next = new RedemptionCounter(limit, stripes);
+            if (counters.replace(couponId, counter, next)) {
+                retire(couponId, counter);
+                return next;
+            }
+        }
+    }
+
+    // False once the coupon's row has no units left under the limit.
+    private boolean refill(Long couponId, RedemptionCounter counter) {
+        synchronized (counter) {
+            if (counter.retired() || counter.available() > 0) return true;
+            long units = lease(couponId, counter.limit());
+            if (units == 0) return false;
+            counter.add(units);
+            // Retired while leasing: the drain may have missed these.
+            if (counter.retired()) giveBackQuietly(couponId, RedemptionQuota.ALL_USERS, counter.drain());
+            return true;
+        }
+    }
+
+    private long lease(Long couponId, long limit) {
+        while (true) {
+            long left = limit - claimed(couponId, RedemptionQuota.ALL_USERS);
+            if (left <= 0) return 0;
+            long units = Math.min(leaseSize, Math.max(1, left / LEASE_SHARE));
+            if (claim(couponId, RedemptionQuota.ALL_USERS, units, limit)) return units;
+        }
+    }
+
+    private boolean claimForUser(Long couponId, String userId, long limit) {
+        if (claim(couponId, userId, 1, limit)) return true;
+        if (quotaRepository.findClaimed(couponId, userId).isPresent()) return false;
+        claimed(couponId, userId);
+        return claim(couponId, userId, 1, limit);
+    }
+
+    private boolean claim(Long couponId, String userId, long units, long limit) {
+        Integer updated = transactionOperations.execute(status -> quotaRepository.claim(couponId, userId, units, limit));
+        return updated != null && updated > 0;
+    }
+
+    // The row's claimed units, creating the row first if needed.
+    private long claimed(Long couponId, String userId) {
+        return quotaRepository.findClaimed(couponId, userId).orElseGet(() -> seed(couponId, userId));
+    }
+
+    private long seed(Long couponId, String userId) {
+        flushLock.readLock().lock();
+        try {
+            boolean allUsers = userId.equals(RedemptionQuota.ALL_USERS);
+            long recorded = allUsers
+                    ? redemptionRepository.countByCouponId(couponId)
+                    : redemptionRepository.countByCouponIdAndUserId(couponId, userId);
+            long queued = pending.stream()
+                    .filter(r -> r.getCouponId().equals(couponId) && (allUsers || userId.equals(r.getUserId())))
+                    .count();
+            transactionOperations.executeWithoutResult(status -> quotaRepository.insert(couponId, userId, recorded + queued));
+        } catch (DataIntegrityViolationException e) {
+            // Created by another node (or thread) in the meantime; that row counts.
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        return quotaRepository.findClaimed(couponId, userId).orElseThrow();
+    }
+
+    private void release(Long couponId, RedemptionCounter counter) {
+        long units = counter.release();
+        if (units > 0) giveBackQuietly(couponId, RedemptionQuota.ALL_USERS, units);
+    }
+
+    private void retire(Long couponId, RedemptionCounter counter) {
+        long units = counter.retire();
+        if (units > 0) giveBackQuietly(couponId, RedemptionQuota.ALL_USERS, units);
+    }
+
+    // A failure strands the units, which errs on the side of the limit.
+    private void giveBackQuietly(Long couponId, String userId, long units) {
+        if (units <= 0) return;
+        try {
+            transactionOperations.executeWithoutResult(status -> quotaRepository.giveBack(couponId, userId, units));
+        } catch (RuntimeException e) {
+            log.warn("Returning {} redemptions of coupon {} failed: {}", units, couponId, e.getMessage());
+        }
+    }
+
+    private final class Held implements Reservation {
+        private final Long couponId;
+        // Set only when a per-user unit was claimed.
+        private final String claimedFor;
+        private final String userId;
+        private final RedemptionCounter global;
+
+        Held(Long couponId, String claimedFor, String userId, RedemptionCounter global) {
+            this.couponId = couponId;
+            this.claimedFor = claimedFor;
+            this.userId = userId;
+            this.global = global;
+        }
+
+        @Override
+        public void commit(BigDecimal discount) {
+            Redemption r = new Redemption();
+            r.setCouponId(couponId);
+            r.setUserId(userId);
+            r.setDiscount(discount);
+            r.setRedeemedAt(clock.instant());
+            pending.add(r);
+        }
+
+        @Override
+        public void release() {
+            if (global != null) RedemptionLimiter.this.release(couponId, global);
+            if (claimedFor != null) giveBackQuietly(couponId, claimedFor, 1);
+        }
+    }
+
+    /** Writes every queued redemption, one transaction per batch. */
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            while (!pending.isEmpty()) {
+                List<Redemption> batch = new ArrayList<>(FLUSH_BATCH);
+                Redemption r;
+                while (batch.size() < FLUSH_BATCH && (r = pending.poll()) != null) batch.add(r);
+                try {
+                    transactionOperations.executeWithoutResult(status -> redemptionRepository.saveAll(batch));
+                } catch (RuntimeException e) {
+                    // Quotas already count these; keep them queued for the next run.
+                    pending.addAll(batch);
+                    throw e;
+                }
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    // Gives back what counters nobody has drawn from for a while are holding.
+    private void retireIdle() {
+        long now = clock.millis();
+        counters.forEach((couponId, counter) -> {
+            long available = counter.available();
+            if (available == 0) {
+                counter.idleSeen = -1;
+            } else if (available != counter.idleSeen) {
+                counter.idleSeen = available;
+                counter.idleSinceMillis = now;
+            } else if (now - counter.idleSinceMillis >= leaseIdleMillis && counters.remove(couponId, counter)) {
+                retire(couponId, counter);
+            }
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+            retireIdle();
+        } catch (RuntimeException e) {
+            log.warn("Writing coupon redemptions failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flusher.shutdown();
+        try { flusher.awaitTermination(5, TimeUnit.SECONDS); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        counters.forEach((couponId, counter) -> {
+            if (counters.remove(couponId, counter)) retire(couponId, counter);
+        });
+        flushQuietly();
+    }
+}
@@ -0,0 +1,144 @@
+package com.monkcommerce.couponapi.catalog;
+
+import com.monkcommerce.couponapi.CouponApiApplication;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.service.CouponService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private static CouponDtos.BuyGet buyGet(long productId, int quantity) {
+        CouponDtos.BuyGet bg = new CouponDtos.BuyGet();
+        bg.setProduct_id(productId);
+        bg.setQuantity(quantity);
+        return bg;
+    }
+
+    private static List<CompiledCoupon> sampleCoupons() {
+        CouponDtos.Details cart = new CouponDtos.Details();
+        cart.setThreshold(new BigDecimal("100.50"));
+        cart.setDiscount(new BigDecimal("12.5"));
+        cart.setExclusive(true);
+        cart.setMax_redemptions(10);
+        CouponDtos.Details product = new CouponDtos.Details();
+        product.setProduct_id(7L);
+        product.setDiscount(new BigDecimal("20"));
+        product.setMax_redemptions_per_user(2);
+        CouponDtos.Details bxgy = new CouponDtos.Details();
+        bxgy.setBuy_products(List.of(buyGet(1, 3), buyGet(2, 3)));
+        bxgy.setGet_products(List.of(buyGet(3, 1)));
+        bxgy.setRepetition_limit(2);
+        return List.of(
+                CompiledCoupon.of(1L, CouponType.CART_WISE, null, LocalDate.of(2031, 1, 1), cart),
+                CompiledCoupon.of(2L, CouponType.PRODUCT_WISE, LocalDate.of(2030, 6, 1), null, product),
+                CompiledCoupon.of(3L, CouponType.BXGY, null, null, bxgy));
+    }
+
+    @Test
+    void fileRoundTripsEveryFieldAndRejectsCorruption() throws IOException {
+        Path file = dir.resolve("catalog.bin");
+        Instant watermark = Instant.parse("2030-01-10T12:00:00Z");
+        List<CompiledCoupon> coupons = sampleCoupons();
+        CatalogSnapshotFile.write(file, watermark, 42, coupons);
+
+        CatalogSnapshotFile.Contents contents = CatalogSnapshotFile.read(file);
+        assertEquals(watermark, contents.watermark());
+        assertEquals(42, contents.version());
+        assertEquals(List.of(1L, 2L, 3L), List.copyOf(contents.byId().keySet()));
+        for (CompiledCoupon expected : coupons.subList(0, 2)) assertEquals(expected, contents.byId().get(expected.id()));
+        CompiledCoupon bxgy = contents.byId().get(3L);
+        assertEquals(List.of(1L, 2L), bxgy.buyProducts().stream().map(CouponDtos.BuyGet::getProduct_id).toList());
+        assertEquals(List.of(3, 3), bxgy.buyProducts().stream().map(CouponDtos.BuyGet::getQuantity).toList());
+        assertEquals(3L, bxgy.getProducts().get(0).getProduct_id());
+        assertEquals(2, bxgy.repetitionLimit());
+        assertNull(bxgy.discount());
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 5] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> CatalogSnapshotFile.read(file));
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> CatalogSnapshotFile.read(file));
+    }
+
+    private ConfigurableApplicationContext node(String snapshotPath) {
+        return new SpringApplicationBuilder(CouponApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:file:" + dir.resolve("coupons") + ";MODE=LEGACY",
+                        "--coupon.change-log.poll-interval-ms=0",
+                        "--coupon.snapshot.path=" + snapshotPath);
+    }
+
+    private static CouponDtos.CreateCouponRequest cartWise(String name) {
+        CouponDtos.Details d = new CouponDtos.Details();
+        d.setThreshold(new BigDecimal("100"));
+        d.setDiscount(new BigDecimal("10"));
+        CouponDtos.CreateCouponRequest req = new CouponDtos.CreateCouponRequest();
+        req.setName(name);
+        req.setType(CouponType.CART_WISE);
+        req.setDetails(d);
+        return req;
+    }
+
+    @Test
+    void restartRestoresTheFileAndCatchesUpOnLaterChanges() throws IOException {
+        Path file = dir.resolve("catalog.bin");
+        Long kept;
+        Long deletedLater;
+        Instant started;
+        try (ConfigurableApplicationContext first = node(file.toString())) {
+            started = Instant.now();
+            CouponService service = first.getBean(CouponService.class);
+            kept = service.create(cartWise("kept")).getId();
+            deletedLater = service.create(cartWise("deleted-later")).getId();
+            first.getBean(CouponCatalog.class).snapshot();
+        }
+        assertTrue(Files.exists(file), "snapshot is written on shutdown");
+        // Without polling the watermark is the write time, not the node's start.
+        assertTrue(CatalogSnapshotFile.read(file).watermark().isAfter(started));
+
+        // Another node changes the catalog while the first is down.
+        Long createdLater;
+        try (ConfigurableApplicationContext other = node("")) {
+            CouponService service = other.getBean(CouponService.class);
+            createdLater = service.create(cartWise("created-later")).getId();
+            service.delete(deletedLater);
+        }
+
+        try (ConfigurableApplicationContext restarted = node(file.toString())) {
+            CouponCatalog catalog = restarted.getBean(CouponCatalog.class);
+            CatalogSnapshot restored = catalog.loaded();
+            assertNotNull(restored, "restored before any read, not loaded lazily");
+            assertNotNull(restored.get(kept));
+            assertNotNull(restored.get(createdLater));
+            assertNull(restored.get(deletedLater));
+        }
+
+        // A corrupt file falls back to the usual full load.
+        Files.write(file, new byte[]{0});
+        try (ConfigurableApplicationContext fallback = node(file.toString())) {
+            CouponCatalog catalog = fallback.getBean(CouponCatalog.class);
+            assertNull(catalog.loaded());
+            assertEquals(2, catalog.snapshot().size());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.monkcommerce.couponapi.catalog;
+
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.entity.Coupon;
+import com.monkcommerce.couponapi.metrics.CouponMetrics;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.pricing.CompiledCart;
+import com.monkcommerce.couponapi.repository.CouponRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CouponCatalogTest {
+
+    private static final LocalDate DAY = LocalDate.of(2030, 1, 10);
+
+    /** A clock the test moves by hand. */
+    private static final class MutableClock extends Clock {
+        private Instant now;
+        MutableClock(Instant now) { this.now = now; }
+        void set(Instant now) { this.now = now; }
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { throw new UnsupportedOperationException(); }
+        @Override public Instant instant() { return now; }
+    }
+
+    private static Coupon cartWise(long id, LocalDate start, LocalDate expiry) {
+        CouponDtos.Details d = new CouponDtos.Details();
+        d.setThreshold(new BigDecimal("10"));
+        d.setDiscount(new BigDecimal("5"));
+        Coupon c = new Coupon();
+        c.setId(id);
+        c.setType(CouponType.CART_WISE);
+        c.setDetails(d);
+        c.setStartDate(start);
+        c.setExpiryDate(expiry);
+        return c;
+    }
+
+    private static CouponCatalog catalog(List<Coupon> coupons, Clock clock) {
+        CouponRepository repo = (CouponRepository) Proxy.newProxyInstance(
+                CouponRepository.class.getClassLoader(), new Class<?>[]{CouponRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findAll")) return coupons;
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return new CouponCatalog(repo, TransactionOperations.withoutTransaction(), clock, CouponMetrics.noop());
+    }
+
+    private static List<Long> candidateIds(CatalogSnapshot snapshot) {
+        CartDto.CartItemDto item = new CartDto.CartItemDto();
+        item.setProduct_id(1L);
+        item.setQuantity(1);
+        item.setPrice(new BigDecimal("100"));
+        CartDto cart = new CartDto();
+        cart.setItems(List.of(item));
+        return snapshot.candidates(CompiledCart.of(cart)).stream().map(CompiledCoupon::id).toList();
+    }
+
+    @Test
+    void snapshotRollsOverAtStartAndExpiryBoundaries() {
+        MutableClock clock = new MutableClock(DAY.atStartOfDay(ZoneOffset.UTC).toInstant());
+        CouponCatalog catalog = catalog(List.of(
+                cartWise(1L, null, DAY),              // last valid day is today
+                cartWise(2L, DAY.plusDays(1), null),  // starts tomorrow
+                cartWise(3L, null, null)), clock);
+
+        CatalogSnapshot today = catalog.snapshot();
+        assertEquals(List.of(1L, 3L), candidateIds(today));
+        assertFalse(today.isActive(today.get(2L)));
+
+        clock.set(DAY.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().minusMillis(1));
+        assertSame(today, catalog.snapshot());
+
+        clock.set(DAY.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        CatalogSnapshot tomorrow = catalog.snapshot();
+        assertEquals(today.version() + 1, tomorrow.version());
+        assertEquals(DAY.plusDays(1), tomorrow.asOf());
+        assertEquals(List.of(2L, 3L), candidateIds(tomorrow));
+        assertTrue(tomorrow.get(1L).isExpired(tomorrow.asOf()));
+
+        // No further start or expiry dates, so the snapshot never needs rolling again.
+        clock.set(DAY.plusYears(5).atStartOfDay(ZoneOffset.UTC).toInstant());
+        assertSame(tomorrow, catalog.snapshot());
+    }
+}
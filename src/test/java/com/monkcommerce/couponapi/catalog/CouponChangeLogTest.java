@@ -0,0 +1,145 @@
+package com.monkcommerce.couponapi.catalog;
+
+import com.monkcommerce.couponapi.CouponApiApplication;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.metrics.CouponMetrics;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.repository.CouponChangeRepository;
+import com.monkcommerce.couponapi.repository.CouponCodeRepository;
+import com.monkcommerce.couponapi.repository.CouponRepository;
+import com.monkcommerce.couponapi.service.ApplicableCouponCache;
+import com.monkcommerce.couponapi.service.CouponService;
+import com.monkcommerce.couponapi.service.RedemptionLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Two application contexts on one file-based database stand in for two nodes. */
+class CouponChangeLogTest {
+
+    @TempDir
+    Path dir;
+
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+
+    @BeforeEach
+    void start() {
+        nodeA = node();
+        nodeB = node();
+    }
+
+    @AfterEach
+    void stop() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    private ConfigurableApplicationContext node() {
+        return new SpringApplicationBuilder(CouponApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:file:" + dir.resolve("coupons") + ";MODE=LEGACY",
+                        "--coupon.change-log.poll-interval-ms=50");
+    }
+
+    private static CouponDtos.UpdateCouponRequest cartWise(String threshold) {
+        CouponDtos.Details d = new CouponDtos.Details();
+        d.setThreshold(new BigDecimal(threshold));
+        d.setDiscount(new BigDecimal("10"));
+        CouponDtos.UpdateCouponRequest req = new CouponDtos.UpdateCouponRequest();
+        req.setName("cart-" + threshold);
+        req.setType(CouponType.CART_WISE);
+        req.setDetails(d);
+        return req;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "node did not catch up in time");
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void writesOnOneNodeReachTheOthersCatalog() throws InterruptedException {
+        CouponCatalog catalogA = nodeA.getBean(CouponCatalog.class);
+        CouponCatalog catalogB = nodeB.getBean(CouponCatalog.class);
+        CouponService serviceA = nodeA.getBean(CouponService.class);
+        CouponService serviceB = nodeB.getBean(CouponService.class);
+
+        Long id = serviceA.create(cartWise("100")).getId();
+        await(() -> catalogB.snapshot().get(id) != null);
+
+        serviceA.update(id, cartWise("250"));
+        await(() -> catalogB.snapshot().get(id).threshold().compareTo(new BigDecimal("250")) == 0);
+
+        serviceB.delete(id);
+        await(() -> catalogA.snapshot().get(id) == null);
+        assertNull(catalogB.snapshot().get(id));
+    }
+
+    @Test
+    void localWriteCommittedDuringAPollIsNotOverwrittenByTheRowThePollRead() throws Exception {
+        CouponService serviceA = nodeA.getBean(CouponService.class);
+        CouponRepository repository = nodeB.getBean(CouponRepository.class);
+        TransactionOperations tx = nodeB.getBean(TransactionOperations.class);
+        Long id = serviceA.create(cartWise("100")).getId();
+
+        // Node B's catalog, with its coupon reads paused once they have returned until the test resumes them.
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        CouponRepository paused = (CouponRepository) Proxy.newProxyInstance(CouponRepository.class.getClassLoader(),
+                new Class<?>[]{CouponRepository.class}, (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(repository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("findAllById") && read.getCount() > 0) {
+                        read.countDown();
+                        assertTrue(resume.await(5, TimeUnit.SECONDS));
+                    }
+                    return result;
+                });
+        Clock clock = Clock.systemDefaultZone();
+        CouponCatalog catalog = new CouponCatalog(paused, tx, clock, CouponMetrics.noop());
+        CouponChangeLog changeLog = new CouponChangeLog(nodeB.getBean(CouponChangeRepository.class), catalog, tx, clock, 0, 10_000, 24);
+        CouponService serviceB = new CouponService(repository, nodeB.getBean(CouponCodeRepository.class), catalog, changeLog,
+                CouponMetrics.noop(), ApplicableCouponCache.disabled(), nodeB.getBean(RedemptionLimiter.class), false);
+        catalog.snapshot();
+
+        // The poll reads node A's 250; node B then commits 300 before the poll publishes.
+        serviceA.update(id, cartWise("250"));
+        CompletableFuture<Integer> poll = CompletableFuture.supplyAsync(changeLog::poll);
+        assertTrue(read.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> update = CompletableFuture.runAsync(
+                () -> tx.executeWithoutResult(status -> serviceB.update(id, cartWise("300"))));
+        await(() -> tx.execute(status -> catalog.compile(repository.findById(id).orElseThrow()))
+                .threshold().compareTo(new BigDecimal("300")) == 0);
+        resume.countDown();
+        assertEquals(1, poll.get(5, TimeUnit.SECONDS));
+        update.get(5, TimeUnit.SECONDS);
+
+        assertEquals(0, catalog.snapshot().get(id).threshold().compareTo(new BigDecimal("300")));
+    }
+}
@@ -0,0 +1,99 @@
+package com.monkcommerce.couponapi.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.repository.CouponRepository;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ApiExceptionHandlerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Test
+    void codeEndpointsMapMissingResourcesTo404AndRejectedRequestsTo400() throws Exception {
+        mockMvc.perform(get("/api/codes/{code}", "NOSUCHCODE"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.error").value("Code not found"));
+        mockMvc.perform(post("/api/coupons/{id}/codes", Long.MAX_VALUE).param("count", "1"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.error").value("Coupon not found"));
+        mockMvc.perform(post("/api/apply-code/{code}", "NOSUCHCODE")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"cart\":{\"items\":[]}}"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/api/coupons/{id}/codes", Long.MAX_VALUE).param("count", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("count must be between 1 and 1000000"));
+    }
+
+    @Test
+    void otherEndpointsKeepTheirOwnErrorResponses() throws Exception {
+        mockMvc.perform(post("/api/coupons/import").contentType("text/csv").content("type,name,name\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Duplicate CSV column: name"));
+        mockMvc.perform(post("/api/coupons/simulate").contentType("application/x-ndjson").content(""))
+                .andExpect(status().isBadRequest());
+        String line = "{\"product_id\":1,\"quantity\":1,\"price\":10}";
+        mockMvc.perform(post("/api/cart-sessions").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[" + line + "," + line + "]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Product 1 is on more than one line"));
+        // Not covered by the advice: the exception reaches the servlet container as before.
+        assertThrows(ServletException.class, () -> mockMvc.perform(get("/api/coupons/{id}", Long.MAX_VALUE)));
+    }
+
+    @Test
+    void batchWithNullCartsIs400() throws Exception {
+        mockMvc.perform(post("/api/applicable-coupons/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"carts\":null}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/applicable-coupons/batch").contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results").isEmpty());
+        mockMvc.perform(post("/api/applicable-coupons/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"carts\":[null]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].error").value("cart is required"));
+    }
+
+    @Test
+    void restoringOverALiveCouponIs409() throws Exception {
+        String created = mockMvc.perform(post("/api/coupons").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"type\":\"CART_WISE\",\"name\":\"Old\",\"details\":{\"threshold\":100,\"discount\":10},"
+                                + "\"expiry_date\":\"" + LocalDate.now().minusDays(60) + "\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        long id = objectMapper.readTree(created).get("id").asLong();
+        mockMvc.perform(post("/api/coupons/archive/run")).andExpect(status().isOk());
+        transactionOperations.executeWithoutResult(status ->
+                couponRepository.insertWithId(id, "Same id", CouponType.CART_WISE.name(), null, null));
+
+        mockMvc.perform(post("/api/coupons/archive/{id}/restore", id))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").value("Coupon " + id + " already exists"));
+    }
+}
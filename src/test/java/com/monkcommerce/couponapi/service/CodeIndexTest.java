@@ -0,0 +1,53 @@
+package com.monkcommerce.couponapi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeIndexTest {
+
+    @Test
+    void keepsCouponsAndRedeemedBitsAcrossGrowth() {
+        CodeIndex index = new CodeIndex(0);
+        for (int i = 0; i < 100_000; i++) assertTrue(index.add("CODE" + i, i % 3, i % 7 == 0));
+        assertFalse(index.add("CODE42", 99, false), "duplicates are rejected");
+        assertEquals(100_000, index.size());
+        for (int i = 0; i < 100_000; i++) {
+            CodeIndex.Lookup lookup = index.lookup("CODE" + i);
+            assertEquals(new CodeIndex.Lookup(i % 3, i % 7 == 0), lookup, "CODE" + i);
+        }
+        assertNull(index.lookup("CODE100000"));
+        assertFalse(index.markRedeemed("CODE100000"));
+    }
+
+    @Test
+    void exactlyOneCallerRedeemsACode() throws Exception {
+        CodeIndex index = new CodeIndex(1000);
+        for (int i = 0; i < 1000; i++) index.add("C" + i, 1, false);
+        AtomicInteger wins = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 1000; i++) if (index.markRedeemed("C" + i)) wins.incrementAndGet();
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1000, wins.get());
+
+        index.clearRedeemed("C7");
+        assertFalse(index.lookup("C7").redeemed());
+        assertTrue(index.lookup("C8").redeemed());
+        assertTrue(index.markRedeemed("C7"));
+    }
+}
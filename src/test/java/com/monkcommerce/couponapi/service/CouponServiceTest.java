@@ -1,25 +1,42 @@
 package com.monkcommerce.couponapi.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monkcommerce.couponapi.catalog.CouponCatalog;
 import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CartSessionDtos;
 import com.monkcommerce.couponapi.dto.CouponDtos;
 import com.monkcommerce.couponapi.entity.Coupon;
 import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.repository.ArchivedCouponRepository;
+import com.monkcommerce.couponapi.repository.CouponChangeRepository;
+import com.monkcommerce.couponapi.repository.CouponCodeRepository;
 import com.monkcommerce.couponapi.repository.CouponRepository;
+import com.monkcommerce.couponapi.repository.RedemptionQuotaRepository;
+import com.monkcommerce.couponapi.repository.RedemptionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.support.TransactionOperations;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
-@Transactional
 class CouponServiceTest {
 
     @Autowired
@@ -28,9 +45,78 @@ class CouponServiceTest {
     @Autowired
     private CouponRepository couponRepository;
 
+    @Autowired
+    private CouponCatalog couponCatalog;
+
+    @Autowired
+    private CouponBatchService couponBatchService;
+
+    @Autowired
+    private CouponStackingSolver couponStackingSolver;
+
+    @Autowired
+    private CouponListingService couponListingService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private LegacyCouponMigration legacyCouponMigration;
+
+    @Autowired
+    private CouponImportService couponImportService;
+
+    @Autowired
+    private CampaignSimulator campaignSimulator;
+
+    @Autowired
+    private CartSessionService cartSessionService;
+
+    @Autowired
+    private CouponArchiver couponArchiver;
+
+    @Autowired
+    private ArchivedCouponRepository archivedCouponRepository;
+
+    @Autowired
+    private CouponCodeService couponCodeService;
+
+    @Autowired
+    private CouponCodeRepository couponCodeRepository;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RedemptionLimiter redemptionLimiter;
+
+    @Autowired
+    private RedemptionRepository redemptionRepository;
+
+    @Autowired
+    private RedemptionQuotaRepository redemptionQuotaRepository;
+
+    @Autowired
+    private CouponChangeRepository couponChangeRepository;
+
+    // The catalog is only refreshed on commit, so tests run without a wrapping transaction.
+    // Every table is emptied, so no test depends on another cleaning up after it.
     @BeforeEach
     void setup() {
+        redemptionLimiter.flush();
+        redemptionRepository.deleteAllInBatch();
+        redemptionQuotaRepository.deleteAllInBatch();
+        couponCodeRepository.deleteAllInBatch();
+        couponChangeRepository.deleteAllInBatch();
+        archivedCouponRepository.deleteAll();
         couponRepository.deleteAll();
+        couponCatalog.reload();
     }
 
     private CartDto sampleCart() {
@@ -75,6 +161,25 @@ class CouponServiceTest {
         return couponService.create(req);
     }
 
+    private Coupon createBxGy(List<long[]> buy, List<long[]> get, Integer limit) {
+        CouponDtos.CreateCouponRequest req = new CouponDtos.CreateCouponRequest();
+        req.setType(CouponType.BXGY);
+        req.setName("BxGy Test");
+        CouponDtos.Details details = new CouponDtos.Details();
+        details.setBuy_products(buy.stream().map(CouponServiceTest::buyGet).toList());
+        details.setGet_products(get.stream().map(CouponServiceTest::buyGet).toList());
+        details.setRepetition_limit(limit);
+        req.setDetails(details);
+        return couponService.create(req);
+    }
+
+    private static CouponDtos.BuyGet buyGet(long[] productAndQty) {
+        CouponDtos.BuyGet bg = new CouponDtos.BuyGet();
+        bg.setProduct_id(productAndQty[0]);
+        bg.setQuantity((int) productAndQty[1]);
+        return bg;
+    }
+
     @Test
     void cartWiseDiscountAppliesWhenOverThreshold() {
         createCartWise(new BigDecimal("100"), new BigDecimal("10"), LocalDate.now().plusDays(1));
@@ -97,4 +202,532 @@ class CouponServiceTest {
         Coupon c = createProductWise(1L, new BigDecimal("20"), LocalDate.now().minusDays(1));
         assertThrows(IllegalArgumentException.class, () -> couponService.applyCoupon(c.getId(), sampleCart()));
     }
+
+    @Test
+    void catalogTracksUpdatesAndDeletes() {
+        Coupon c = createCartWise(new BigDecimal("100"), new BigDecimal("10"), null);
+        CouponDtos.UpdateCouponRequest req = new CouponDtos.UpdateCouponRequest();
+        req.setType(CouponType.CART_WISE);
+        req.setName("CartWise Updated");
+        CouponDtos.Details details = new CouponDtos.Details();
+        details.setThreshold(new BigDecimal("100"));
+        details.setDiscount(new BigDecimal("20"));
+        req.setDetails(details);
+        couponService.update(c.getId(), req);
+        assertEquals(new BigDecimal("88.00"), couponService.applicableCoupons(sampleCart()).get(0).get("discount"));
+
+        couponService.delete(c.getId());
+        assertTrue(couponService.applicableCoupons(sampleCart()).isEmpty());
+        assertThrows(NoSuchElementException.class, () -> couponService.applyCoupon(c.getId(), sampleCart()));
+    }
+
+    @Test
+    void onlyMatchingCouponsAreReturnedInIdOrder() {
+        Coupon bxgy = createBxGy(List.of(new long[]{1, 3}, new long[]{2, 3}), List.of(new long[]{3, 1}), 2);
+        createProductWise(99L, new BigDecimal("20"), null);
+        Coupon productWise = createProductWise(1L, new BigDecimal("20"), null);
+        createCartWise(new BigDecimal("440"), new BigDecimal("10"), null);
+        Coupon cartWise = createCartWise(new BigDecimal("439.99"), new BigDecimal("5"), null);
+        createBxGy(List.of(new long[]{1, 3}, new long[]{42, 1}), List.of(new long[]{3, 1}), null);
+
+        List<Map<String, Object>> applicable = couponService.applicableCoupons(sampleCart());
+        assertEquals(List.of(bxgy.getId(), productWise.getId(), cartWise.getId()),
+                applicable.stream().map(m -> m.get("coupon_id")).toList());
+        // One repetition (3 of product 2 / 3) frees one unit of product 3 at 25.
+        assertEquals(new BigDecimal("25"), applicable.get(0).get("discount"));
+        assertEquals(new BigDecimal("60.00"), applicable.get(1).get("discount"));
+        assertEquals(new BigDecimal("22.00"), applicable.get(2).get("discount"));
+    }
+
+    @Test
+    void repeatedProductLinesUseFirstLineForProductWiseAndLastForBxGy() {
+        CartDto cart = sampleCart();
+        CartDto.CartItemDto again = new CartDto.CartItemDto();
+        again.setProduct_id(1L);
+        again.setQuantity(3);
+        again.setPrice(new BigDecimal("10"));
+        List<CartDto.CartItemDto> items = new ArrayList<>(cart.getItems());
+        items.add(0, again);
+        cart.setItems(items);
+        Coupon productWise = createProductWise(1L, new BigDecimal("10"), null);
+        // Buys 3 of product 1 (last line: 6) to get one of product 1 free at its last price, 50.
+        Coupon bxgy = createBxGy(List.of(new long[]{1, 3}), List.of(new long[]{1, 1}), null);
+
+        Map<Object, Object> discounts = new HashMap<>();
+        for (Map<String, Object> m : couponService.applicableCoupons(cart)) discounts.put(m.get("coupon_id"), m.get("discount"));
+        assertEquals(new BigDecimal("3.00"), discounts.get(productWise.getId()));
+        assertEquals(new BigDecimal("100"), discounts.get(bxgy.getId()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchKeepsOrderAndReportsPerCartErrors() {
+        Coupon c = createCartWise(new BigDecimal("100"), new BigDecimal("10"), null);
+        List<CartDto> carts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) carts.add(sampleCart());
+        carts.set(7, new CartDto());
+
+        List<Map<String, Object>> results = (List<Map<String, Object>>) couponBatchService.applicableCoupons(carts).get("results");
+        assertEquals(20, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, Object> r = results.get(i);
+            assertEquals(i, r.get("index"));
+            if (i == 7) {
+                assertTrue(r.containsKey("error"));
+            } else {
+                List<Map<String, Object>> applicable = (List<Map<String, Object>>) r.get("applicable_coupons");
+                assertEquals(c.getId(), applicable.get(0).get("coupon_id"));
+            }
+        }
+    }
+
+    @Test
+    void bestCouponsReturnsLargestDiscountsFirst() {
+        createCartWise(new BigDecimal("100"), new BigDecimal("10"), null);           // 44.00
+        Coupon productWise = createProductWise(1L, new BigDecimal("20"), null);     // 60.00
+        createProductWise(2L, new BigDecimal("20"), null);                          // 18.00
+        Coupon cartWise = createCartWise(new BigDecimal("400"), new BigDecimal("15"), null); // 66.00
+        createBxGy(List.of(new long[]{1, 3}), List.of(new long[]{3, 1}), 1);       // 25
+        createProductWise(3L, new BigDecimal("90"), LocalDate.now().minusDays(1));  // expired
+
+        List<Map<String, Object>> best = couponService.bestCoupons(sampleCart(), 2);
+        assertEquals(List.of(cartWise.getId(), productWise.getId()), best.stream().map(m -> m.get("coupon_id")).toList());
+        assertEquals(new BigDecimal("66.00"), best.get(0).get("discount"));
+        assertEquals(5, couponService.bestCoupons(sampleCart(), 10).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void stackingFindsBestCombinationBeyondGreedy() {
+        // Greedy would take the 50 BxGy and starve the other two, which together free 55.
+        createBxGy(List.of(new long[]{1, 4}), List.of(new long[]{1, 1}), 1);
+        Coupon b = createBxGy(List.of(new long[]{1, 3}), List.of(new long[]{2, 1}), 1);
+        Coupon c = createBxGy(List.of(new long[]{1, 3}), List.of(new long[]{3, 1}), 1);
+        Coupon cartWise = createCartWise(new BigDecimal("100"), new BigDecimal("10"), null);
+        Coupon productWise = createProductWise(2L, new BigDecimal("20"), null);
+
+        Map<String, Object> result = couponStackingSolver.bestCombination(sampleCart(), 1000L);
+        List<Map<String, Object>> coupons = (List<Map<String, Object>>) result.get("coupons");
+        assertEquals(List.of(b.getId(), c.getId(), cartWise.getId(), productWise.getId()),
+                coupons.stream().map(m -> m.get("coupon_id")).toList());
+        assertEquals(0, new BigDecimal("117").compareTo((BigDecimal) result.get("total_discount")));
+        assertEquals(true, result.get("optimal"));
+
+        CouponDtos.CreateCouponRequest req = new CouponDtos.CreateCouponRequest();
+        req.setType(CouponType.CART_WISE);
+        req.setName("Exclusive");
+        CouponDtos.Details details = new CouponDtos.Details();
+        details.setThreshold(BigDecimal.ZERO);
+        details.setDiscount(new BigDecimal("30"));
+        details.setExclusive(true);
+        req.setDetails(details);
+        Coupon exclusive = couponService.create(req);
+
+        result = couponStackingSolver.bestCombination(sampleCart(), 1000L);
+        coupons = (List<Map<String, Object>>) result.get("coupons");
+        assertEquals(List.of(exclusive.getId()), coupons.stream().map(m -> m.get("coupon_id")).toList());
+        assertEquals(new BigDecimal("132.00"), result.get("total_discount"));
+        assertThrows(IllegalArgumentException.class, () -> couponStackingSolver.bestCombination(sampleCart(), -1L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void keysetPagesAndExportApplyFilters() throws Exception {
+        Coupon a = createCartWise(new BigDecimal("100"), new BigDecimal("10"), null);
+        Coupon expired = createProductWise(1L, new BigDecimal("20"), LocalDate.now().minusDays(1));
+        Coupon b = createProductWise(2L, new BigDecimal("20"), LocalDate.now());
+        Coupon c = createCartWise(new BigDecimal("50"), new BigDecimal("5"), LocalDate.now().plusDays(3));
+
+        CouponListingService.Filter active = new CouponListingService.Filter(null, true);
+        Map<String, Object> first = couponListingService.page(null, 2, active);
+        assertEquals(List.of(a.getId(), b.getId()), ((List<Coupon>) first.get("coupons")).stream().map(Coupon::getId).toList());
+        Map<String, Object> second = couponListingService.page((Long) first.get("next_cursor"), 2, active);
+        assertEquals(List.of(c.getId()), ((List<Coupon>) second.get("coupons")).stream().map(Coupon::getId).toList());
+        assertNull(second.get("next_cursor"));
+
+        Map<String, Object> expiredOnly = couponListingService.page(null, 10, new CouponListingService.Filter(null, false));
+        assertEquals(List.of(expired.getId()), ((List<Coupon>) expiredOnly.get("coupons")).stream().map(Coupon::getId).toList());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        couponListingService.exportNdjson(new CouponListingService.Filter(CouponType.CART_WISE, null), out);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":" + a.getId() + ","));
+        assertTrue(lines[1].startsWith("{\"id\":" + c.getId() + ","));
+    }
+
+    @Test
+    void applyBxGySerializesPerLineBreakdown() throws Exception {
+        Coupon c = createBxGy(List.of(new long[]{1, 3}, new long[]{2, 3}), List.of(new long[]{3, 1}), 2);
+        String json = objectMapper.writeValueAsString(couponService.applyCoupon(c.getId(), sampleCart()));
+        assertEquals("{\"updated_cart\":{\"items\":["
+                + "{\"product_id\":1,\"quantity\":6,\"price\":50,\"total_discount\":0},"
+                + "{\"product_id\":2,\"quantity\":3,\"price\":30,\"total_discount\":0},"
+                + "{\"product_id\":3,\"quantity\":3,\"price\":25,\"total_discount\":25}],"
+                + "\"total_price\":440,\"total_discount\":25,\"final_price\":415}}", json);
+    }
+
+    @Test
+    void legacyJsonRowsAreMigratedToRuleTables() {
+        Coupon legacy = new Coupon();
+        legacy.setName("Legacy BxGy");
+        legacy.setType(CouponType.BXGY);
+        legacy.setDetailsJson("{\"buy_products\":[{\"product_id\":1,\"quantity\":3},{\"product_id\":2,\"quantity\":3}],"
+                + "\"get_products\":[{\"product_id\":3,\"quantity\":1}],\"repetition_limit\":2}");
+        legacy = couponRepository.save(legacy);
+        couponCatalog.reload();
+        assertEquals(new BigDecimal("25"), couponService.applicableCoupons(sampleCart()).get(0).get("discount"));
+
+        assertEquals(1, legacyCouponMigration.migrate());
+        couponCatalog.reload();
+        Coupon migrated = couponService.get(legacy.getId());
+        assertNull(migrated.getDetailsJson());
+        assertEquals(new BigDecimal("25"), couponService.applicableCoupons(sampleCart()).get(0).get("discount"));
+    }
+
+    @Test
+    void databaseFromBeforeTheRuleTablesIsUpgradedBeforeWrites() {
+        // As an older version leaves it: details_json NOT NULL and identity ids ahead of coupon_seq.
+        long value = transactionOperations.execute(status -> ((Number) entityManager
+                .createNativeQuery("select next value for coupon_seq").getSingleResult()).longValue());
+        long legacyId = value + 60;
+        transactionOperations.executeWithoutResult(status -> {
+            entityManager.createNativeQuery("alter table coupon alter column details_json set not null").executeUpdate();
+            entityManager.createNativeQuery("insert into coupon (id, name, type, details_json) "
+                    + "values (?1, 'Legacy', 'CART_WISE', '{\"threshold\":100,\"discount\":10}')")
+                    .setParameter(1, legacyId).executeUpdate();
+        });
+
+        legacyCouponMigration.upgradeSchema();
+        // Enough to use up this node's current block and the next two.
+        for (int i = 0; i < 110; i++) createProductWise(1L, new BigDecimal("5"), null);
+        assertEquals(111, couponRepository.count());
+        assertEquals(1, legacyCouponMigration.migrate());
+        couponCatalog.reload();
+        assertEquals(0, new BigDecimal("100").compareTo(couponCatalog.snapshot().get(legacyId).threshold()));
+    }
+
+    @Test
+    void ndjsonImportReportsBadLinesAndPublishesTheRest() throws Exception {
+        String ndjson = """
+                {"type":"CART_WISE","name":"10% over 100","details":{"threshold":100,"discount":10}}
+                {"type":"PRODUCT_WISE","name":"20% off 1",
+                {"type":"PRODUCT_WISE","details":{"product_id":1,"discount":20}}
+
+                {"type":"PRODUCT_WISE","name":"no product","details":{"discount":20}}
+                {"type":"PRODUCT_WISE","name":"20% off 1","details":{"product_id":1,"discount":20}}
+                """;
+        Map<String, Object> report = couponImportService.importCoupons(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), CouponImportService.Format.NDJSON);
+
+        assertEquals(2L, report.get("imported"));
+        assertEquals(3L, report.get("failed"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> errors = (List<Map<String, Object>>) report.get("errors");
+        assertEquals(List.of(2L, 3L, 5L), errors.stream().map(e -> e.get("line")).toList());
+        assertEquals("name must not be blank", errors.get(1).get("error"));
+        assertEquals(2, couponRepository.count());
+        // Published to the catalog without a reload.
+        assertEquals(2, couponService.applicableCoupons(sampleCart()).size());
+    }
+
+    @Test
+    void csvImportParsesQuotedFieldsAndBxGyPairs() throws Exception {
+        String csv = """
+                type,name,threshold,discount,product_id,buy_products,get_products,repetition_limit,expiry_date
+                BXGY,"Buy 1 & 2, get 3",,,,1:3;2:3,3:1,2,
+                CART_WISE,"Say ""hi"" twice",100,10,,,,,not-a-date
+                """;
+        Map<String, Object> report = couponImportService.importCoupons(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), CouponImportService.Format.CSV);
+
+        assertEquals(1L, report.get("imported"));
+        assertEquals(1L, report.get("failed"));
+        assertEquals("Buy 1 & 2, get 3", couponService.list().get(0).getName());
+        assertEquals(2, couponCatalog.snapshot().coupons().iterator().next().buyProducts().size());
+        assertEquals(new BigDecimal("25"), couponService.applicableCoupons(sampleCart()).get(0).get("discount"));
+
+        report = couponImportService.importCoupons(new ByteArrayInputStream("""
+                type,name,threshold,discount,exclusive
+                CART_WISE,Only one,100,10,yes
+                """.getBytes(StandardCharsets.UTF_8)), CouponImportService.Format.CSV);
+        assertEquals(0L, report.get("imported"));
+        assertThrows(IllegalArgumentException.class, () -> couponImportService.importCoupons(new ByteArrayInputStream(
+                "type,name,name\n".getBytes(StandardCharsets.UTF_8)), CouponImportService.Format.CSV));
+    }
+
+    @Test
+    void simulationEvaluatesADraftAgainstCartsWithoutSavingIt() throws Exception {
+        String ndjson = """
+                {"type":"BXGY","name":"Buy 2 of 1, get 3","details":{\
+                "buy_products":[{"product_id":1,"quantity":2}],"get_products":[{"product_id":3,"quantity":1}]}}
+                {"items":[{"product_id":1,"quantity":4,"price":50},{"product_id":3,"quantity":2,"price":25}]}
+                {"items":[{"product_id":1,"quantity":1,"price":50},{"product_id":3,"quantity":1,"price":25}]}
+                {"items":[
+                {"items":[]}
+                {"items":[{"product_id":1,"quantity":2,"price":10},{"product_id":3,"quantity":1,"price":40}]}
+                """;
+        Map<String, Object> report = campaignSimulator.simulate(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), 5);
+
+        assertEquals(3L, report.get("carts"));
+        assertEquals(2L, report.get("invalid"));
+        assertEquals(2L, report.get("hits"));
+        assertEquals(0, new BigDecimal("90").compareTo((BigDecimal) report.get("total_discount")));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> perHit = (Map<String, Object>) report.get("discount_per_hit");
+        assertEquals(new BigDecimal("45.00"), perHit.get("mean"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> top = (List<Map<String, Object>>) report.get("top_products");
+        assertEquals(List.of(Map.of("product_id", 3L, "discount", new BigDecimal("90.00"), "carts", 2L)), top);
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> errors = (List<Map<String, Object>>) report.get("errors");
+        assertEquals(List.of(4L, 5L), errors.stream().map(e -> e.get("line")).toList());
+        assertEquals(0, couponRepository.count());
+
+        String invalidDraft = "{\"type\":\"CART_WISE\",\"name\":\"no threshold\",\"details\":{\"discount\":10}}\n";
+        assertThrows(IllegalArgumentException.class,
+                () -> campaignSimulator.simulate(new ByteArrayInputStream(invalidDraft.getBytes(StandardCharsets.UTF_8)), 5));
+    }
+
+    private static CartSessionDtos.Delta delta(CartSessionDtos.Op op, long productId, Integer quantity, String price) {
+        CartSessionDtos.Delta d = new CartSessionDtos.Delta();
+        d.setOp(op);
+        d.setProduct_id(productId);
+        d.setQuantity(quantity);
+        d.setPrice(price == null ? null : new BigDecimal(price));
+        return d;
+    }
+
+    // The session's coupons must match a full evaluation of its cart.
+    @SuppressWarnings("unchecked")
+    private void assertMatchesFullEvaluation(Map<String, Object> session, int expectedCoupons) {
+        CartDto cart = new CartDto();
+        cart.setItems((List<CartDto.CartItemDto>) session.get("items"));
+        assertEquals(couponService.applicableCoupons(cart), session.get("applicable_coupons"));
+        assertEquals(expectedCoupons, ((List<?>) session.get("applicable_coupons")).size());
+    }
+
+    @Test
+    void cartSessionDeltasOnlyReevaluateAffectedCoupons() {
+        createCartWise(new BigDecimal("100"), new BigDecimal("10"), null);
+        createProductWise(1L, new BigDecimal("20"), null);
+        createProductWise(9L, new BigDecimal("20"), null);
+        createBxGy(List.<long[]>of(new long[]{1, 2}), List.<long[]>of(new long[]{3, 1}), null);
+
+        CartDto start = new CartDto();
+        start.setItems(List.of(sampleCart().getItems().get(0)));
+        start.getItems().get(0).setQuantity(1);
+        Map<String, Object> session = cartSessionService.create(start);
+        String id = (String) session.get("session_id");
+        assertMatchesFullEvaluation(session, 1);
+
+        // Product 3 is only read by the BxGy coupon, which still lacks its buy quantity.
+        session = cartSessionService.update(id, List.of(delta(CartSessionDtos.Op.ADD, 3, 1, "25")));
+        assertEquals(1, session.get("evaluated"));
+        assertMatchesFullEvaluation(session, 1);
+
+        // Total 75 -> 175: crosses the cart-wise threshold and completes the BxGy buy.
+        session = cartSessionService.update(id, List.of(delta(CartSessionDtos.Op.SET_QUANTITY, 1, 3, null)));
+        assertEquals(3, session.get("evaluated"));
+        assertMatchesFullEvaluation(session, 3);
+
+        // Removing the free product drops the BxGy coupon and rescales the cart-wise one.
+        session = cartSessionService.update(id, List.of(delta(CartSessionDtos.Op.REMOVE, 3, null, null)));
+        assertEquals(2, session.get("evaluated"));
+        assertMatchesFullEvaluation(session, 2);
+        assertEquals(new BigDecimal("150"), session.get("cart_total"));
+
+        assertThrows(IllegalArgumentException.class, () -> cartSessionService.update(id, List.of(
+                delta(CartSessionDtos.Op.ADD, 9, 1, "10"),
+                delta(CartSessionDtos.Op.SET_QUANTITY, 3, 1, null))));
+        assertMatchesFullEvaluation(cartSessionService.get(id), 2);
+
+        // A catalog change is picked up by one full evaluation.
+        createProductWise(1L, new BigDecimal("5"), null);
+        session = cartSessionService.get(id);
+        assertMatchesFullEvaluation(session, 3);
+        assertEquals(0, cartSessionService.get(id).get("evaluated"));
+
+        cartSessionService.delete(id);
+        assertThrows(NoSuchElementException.class, () -> cartSessionService.get(id));
+    }
+
+    @Test
+    void evaluationIsMetered() {
+        createCartWise(new BigDecimal("100"), new BigDecimal("10"), null);
+        createProductWise(1L, new BigDecimal("20"), null);
+        createProductWise(2L, new BigDecimal("20"), LocalDate.now().plusDays(1));
+        createProductWise(9L, new BigDecimal("20"), null);
+        double scanned = meterRegistry.counter("coupon.candidates.scanned").count();
+        double matched = meterRegistry.counter("coupon.candidates.matched").count();
+        long applicable = meterRegistry.timer("coupon.applicable").count();
+        long productWise = meterRegistry.timer("coupon.evaluate", "type", "PRODUCT_WISE").count();
+
+        couponService.applicableCoupons(sampleCart());
+
+        assertEquals(applicable + 1, meterRegistry.timer("coupon.applicable").count());
+        assertEquals(scanned + 3, meterRegistry.counter("coupon.candidates.scanned").count());
+        assertEquals(matched + 3, meterRegistry.counter("coupon.candidates.matched").count());
+        assertEquals(productWise + 2, meterRegistry.timer("coupon.evaluate", "type", "PRODUCT_WISE").count());
+        assertTrue(meterRegistry.get("spring.data.repository.invocations").timers().size() > 0);
+    }
+
+    @Test
+    void repeatedCartsAreServedFromCacheUntilTheCatalogChanges() {
+        createProductWise(1L, new BigDecimal("20"), null);
+        CartDto reordered = sampleCart();
+        reordered.setItems(List.of(reordered.getItems().get(2), reordered.getItems().get(0), reordered.getItems().get(1)));
+        double hits = meterRegistry.get("cache.gets").tags("cache", "applicable", "result", "hit").functionCounter().count();
+
+        List<Map<String, Object>> first = couponService.applicableCoupons(sampleCart());
+        assertSame(first, couponService.applicableCoupons(reordered));
+        assertEquals(hits + 1, meterRegistry.get("cache.gets").tags("cache", "applicable", "result", "hit").functionCounter().count());
+
+        createCartWise(new BigDecimal("100"), new BigDecimal("10"), null);
+        assertEquals(2, couponService.applicableCoupons(sampleCart()).size());
+    }
+
+    @Test
+    void archivalMovesLongExpiredCouponsAndRestoreKeepsTheId() {
+        LocalDate today = LocalDate.now();
+        Coupon live = createCartWise(new BigDecimal("100"), new BigDecimal("10"), null);
+        Coupon recentlyExpired = createProductWise(1L, new BigDecimal("20"), today.minusDays(5));
+        CouponDtos.CreateCouponRequest req = new CouponDtos.CreateCouponRequest();
+        req.setType(CouponType.BXGY);
+        req.setName("Old BxGy");
+        CouponDtos.Details details = new CouponDtos.Details();
+        details.setBuy_products(List.of(buyGet(new long[]{1, 3}), buyGet(new long[]{2, 3})));
+        details.setGet_products(List.of(buyGet(new long[]{3, 1})));
+        details.setRepetition_limit(2);
+        req.setDetails(details);
+        req.setExpiry_date(today.minusDays(60));
+        Coupon old = couponService.create(req);
+        couponCodeService.generate(old.getId(), 1, null);
+        String code = couponCodeRepository.findAll().get(0).getCode();
+
+        double movedBefore = meterRegistry.get("coupon.archive.moved").summary().totalAmount();
+        assertEquals(1, couponArchiver.archive());
+        assertEquals(List.of(live.getId(), recentlyExpired.getId()), couponService.list().stream().map(Coupon::getId).toList());
+        assertNull(couponCatalog.snapshot().get(old.getId()));
+        assertEquals(List.of(old.getId()), archivedCouponRepository.findAll().stream().map(a -> a.getId()).toList());
+        assertEquals(movedBefore + 1, meterRegistry.get("coupon.archive.moved").summary().totalAmount());
+        assertEquals(0, couponArchiver.archive());
+        // Archiving keeps the coupon's codes, but they redeem nothing until it is restored.
+        assertEquals(1, couponCodeRepository.count());
+        assertThrows(NoSuchElementException.class, () -> couponCodeService.redeem(code, sampleCart(), null));
+
+        Coupon restored = couponArchiver.restore(old.getId(), today.plusDays(30));
+        assertEquals(old.getId(), restored.getId());
+        assertEquals(today.plusDays(30), couponService.get(old.getId()).getExpiryDate());
+        couponCatalog.reload(); // read the restored rule back from the database
+        assertEquals(2, couponCatalog.snapshot().get(old.getId()).buyProducts().size());
+        assertEquals(2, couponCatalog.snapshot().get(old.getId()).repetitionLimit());
+        assertEquals(0, archivedCouponRepository.count());
+        assertEquals(new BigDecimal("25"), couponService.applyCoupon(old.getId(), sampleCart()).updated_cart().total_discount());
+        assertEquals(new BigDecimal("25"), couponCodeService.redeem(code, sampleCart(), null).updated_cart().total_discount());
+        assertThrows(NoSuchElementException.class, () -> couponArchiver.restore(old.getId(), null));
+    }
+
+    @Test
+    void restoreOverALiveCouponWithTheSameIdIsRejected() {
+        Coupon old = createProductWise(1L, new BigDecimal("20"), LocalDate.now().minusDays(60));
+        assertEquals(1, couponArchiver.archive());
+        transactionOperations.executeWithoutResult(status ->
+                couponRepository.insertWithId(old.getId(), "Same id", CouponType.CART_WISE.name(), null, null));
+
+        assertThrows(DuplicateKeyException.class, () -> couponArchiver.restore(old.getId(), null));
+        assertEquals("Same id", couponService.get(old.getId()).getName());
+        assertEquals(1, archivedCouponRepository.count());
+    }
+
+    @Test
+    void singleUseCodesRedeemOnceAndSurviveAnIndexRebuild() throws Exception {
+        Coupon coupon = createProductWise(1L, new BigDecimal("20"), null);
+        Coupon expired = createProductWise(1L, new BigDecimal("20"), LocalDate.now().minusDays(1));
+        assertEquals(2500, couponCodeService.generate(coupon.getId(), 2500, "spring"));
+        assertEquals(1, couponCodeService.generate(expired.getId(), 1, null));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        couponCodeService.exportNdjson(coupon.getId(), out);
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(2500, lines.size());
+        String code = objectMapper.readTree(lines.get(0)).get("code").asText();
+        assertTrue(code.startsWith("SPRING") && code.length() == 18, code);
+
+        assertEquals(Map.of("code", code, "coupon_id", coupon.getId(), "redeemed", false), couponCodeService.resolve(code));
+        assertEquals(new BigDecimal("60.00"), couponCodeService.redeem(code, sampleCart(), null).updated_cart().total_discount());
+        assertThrows(IllegalArgumentException.class, () -> couponCodeService.redeem(code, sampleCart(), null));
+        assertEquals(true, couponCodeService.resolve(code).get("redeemed"));
+        assertThrows(NoSuchElementException.class, () -> couponCodeService.resolve("NOSUCHCODE"));
+
+        // A failed checkout leaves the code redeemable.
+        String expiredCode = couponCodeRepository.findAll().stream()
+                .filter(c -> c.getCouponId().equals(expired.getId())).findFirst().orElseThrow().getCode();
+        assertThrows(IllegalArgumentException.class, () -> couponCodeService.redeem(expiredCode, sampleCart(), null));
+        assertEquals(false, couponCodeService.resolve(expiredCode).get("redeemed"));
+
+        // A new instance rebuilds its index from coupon_code, as on startup.
+        CouponCodeService restarted = new CouponCodeService(couponCodeRepository, couponCatalog, couponService,
+                transactionOperations, entityManager, objectMapper, Clock.systemDefaultZone(), 12, 1000);
+        assertEquals(true, restarted.resolve(code).get("redeemed"));
+        assertEquals(false, restarted.resolve(expiredCode).get("redeemed"));
+    }
+
+    @Test
+    void codeIsNotUsedUpByACartTheCouponGivesNothing() {
+        Coupon coupon = createProductWise(9L, new BigDecimal("20"), null);
+        couponCodeService.generate(coupon.getId(), 1, null);
+        String code = couponCodeRepository.findAll().get(0).getCode();
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> couponCodeService.redeem(code, sampleCart(), null));
+        assertEquals("Coupon does not apply to this cart", ex.getMessage());
+        assertEquals(false, couponCodeService.resolve(code).get("redeemed"));
+        assertNull(couponCodeRepository.findAll().get(0).getRedeemedAt());
+
+        CartDto cart = sampleCart();
+        cart.getItems().get(0).setProduct_id(9L);
+        assertEquals(new BigDecimal("60.00"), couponCodeService.redeem(code, cart, null).updated_cart().total_discount());
+    }
+
+    @Test
+    void deletingACouponDropsItsCodesAndTheirIndexEntriesRedeemNothing() {
+        Coupon deleted = createProductWise(1L, new BigDecimal("20"), null);
+        Coupon kept = createProductWise(1L, new BigDecimal("20"), null);
+        couponCodeService.generate(deleted.getId(), 3, null);
+        couponCodeService.generate(kept.getId(), 2, null);
+        String code = couponCodeRepository.findAll().stream()
+                .filter(c -> c.getCouponId().equals(deleted.getId())).findFirst().orElseThrow().getCode();
+
+        couponService.delete(deleted.getId());
+        assertEquals(List.of(kept.getId(), kept.getId()),
+                couponCodeRepository.findAll().stream().map(c -> c.getCouponId()).toList());
+        // Still in this node's index, but its coupon is gone.
+        assertThrows(NoSuchElementException.class, () -> couponCodeService.redeem(code, sampleCart(), null));
+        assertEquals(false, couponCodeService.resolve(code).get("redeemed"));
+    }
+
+    @Test
+    void applyCouponEnforcesPerUserRedemptionLimit() {
+        CouponDtos.CreateCouponRequest req = new CouponDtos.CreateCouponRequest();
+        req.setType(CouponType.PRODUCT_WISE);
+        req.setName("Once per user");
+        CouponDtos.Details details = new CouponDtos.Details();
+        details.setProduct_id(3L);
+        details.setDiscount(new BigDecimal("10"));
+        details.setMax_redemptions_per_user(1);
+        req.setDetails(details);
+        Coupon c = couponService.create(req);
+
+        assertThrows(IllegalArgumentException.class, () -> couponService.applyCoupon(c.getId(), sampleCart()));
+        couponService.applyCoupon(c.getId(), sampleCart(), "alice");
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> couponService.applyCoupon(c.getId(), sampleCart(), "alice"));
+        assertEquals("Coupon redemption limit reached for this user", ex.getMessage());
+        couponService.applyCoupon(c.getId(), sampleCart(), "bob");
+
+        redemptionLimiter.flush();
+        assertEquals(1, redemptionRepository.countByCouponIdAndUserId(c.getId(), "alice"));
+        assertEquals(2, redemptionRepository.countByCouponId(c.getId()));
+    }
 }
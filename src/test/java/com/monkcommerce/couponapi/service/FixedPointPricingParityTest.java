@@ -0,0 +1,153 @@
+package com.monkcommerce.couponapi.service;
+
+import com.monkcommerce.couponapi.catalog.CompiledCoupon;
+import com.monkcommerce.couponapi.dto.CartDto;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.metrics.CouponMetrics;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.pricing.CompiledCart;
+import com.monkcommerce.couponapi.pricing.FixedPointCart;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks the long-based evaluator against the BigDecimal one, value and scale. */
+class FixedPointPricingParityTest {
+
+    private final CouponService decimal = new CouponService(null, null, null, null, CouponMetrics.noop(), ApplicableCouponCache.disabled(), null, false);
+    private final Random random = new Random(20240101L);
+
+    private BigDecimal randomAmount(int maxUnscaled) {
+        return BigDecimal.valueOf(random.nextInt(maxUnscaled), random.nextInt(4));
+    }
+
+    private CartDto randomCart() {
+        CartDto cart = new CartDto();
+        List<CartDto.CartItemDto> items = new ArrayList<>();
+        int lines = 1 + random.nextInt(8);
+        for (int i = 0; i < lines; i++) {
+            CartDto.CartItemDto item = new CartDto.CartItemDto();
+            // Small id range so duplicate lines for one product show up regularly.
+            item.setProduct_id((long) random.nextInt(6));
+            item.setQuantity(1 + random.nextInt(12));
+            item.setPrice(randomAmount(100_000));
+            items.add(item);
+        }
+        cart.setItems(items);
+        return cart;
+    }
+
+    private List<CouponDtos.BuyGet> randomBuyGets() {
+        List<CouponDtos.BuyGet> list = new ArrayList<>();
+        int n = 1 + random.nextInt(3);
+        for (int i = 0; i < n; i++) {
+            CouponDtos.BuyGet bg = new CouponDtos.BuyGet();
+            bg.setProduct_id((long) random.nextInt(6));
+            bg.setQuantity(1 + random.nextInt(4));
+            list.add(bg);
+        }
+        return list;
+    }
+
+    private CompiledCoupon randomCoupon(long id) {
+        CouponType type = CouponType.values()[random.nextInt(3)];
+        CouponDtos.Details d = new CouponDtos.Details();
+        switch (type) {
+            case CART_WISE -> {
+                d.setThreshold(randomAmount(500_000));
+                d.setDiscount(randomAmount(10_000));
+            }
+            case PRODUCT_WISE -> {
+                d.setProduct_id((long) random.nextInt(6));
+                d.setDiscount(randomAmount(10_000));
+            }
+            case BXGY -> {
+                d.setBuy_products(randomBuyGets());
+                d.setGet_products(randomBuyGets());
+                d.setRepetition_limit(random.nextBoolean() ? null : random.nextInt(4));
+            }
+        }
+        return CompiledCoupon.of(id, type, null, null, d);
+    }
+
+    private void assertParity(CompiledCoupon coupon, CartDto cart) {
+        FixedPointCart fixed = FixedPointCart.of(cart);
+        assertNotNull(fixed);
+        BigDecimal total = decimal.cartTotal(cart);
+        assertEquals(total, CompiledCart.of(cart).total());
+        assertEquals(total, fixed.total());
+        assertEquals(decimal.evaluate(coupon, CompiledCart.of(cart)), decimal.evaluate(coupon, fixed),
+                () -> "coupon " + coupon);
+    }
+
+    @Test
+    void randomCartsAndCouponsMatchBigDecimalResults() {
+        for (int i = 0; i < 20_000; i++) {
+            assertParity(randomCoupon(i), randomCart());
+        }
+    }
+
+    @Test
+    void halfUpRoundingMatchesOnExactHalves() {
+        CartDto cart = new CartDto();
+        CartDto.CartItemDto item = new CartDto.CartItemDto();
+        item.setProduct_id(1L);
+        item.setQuantity(1);
+        item.setPrice(new BigDecimal("0.05"));
+        cart.setItems(List.of(item));
+        CouponDtos.Details d = new CouponDtos.Details();
+        d.setProduct_id(1L);
+        d.setDiscount(new BigDecimal("50"));
+        CompiledCoupon coupon = CompiledCoupon.of(1L, CouponType.PRODUCT_WISE, null, null, d);
+        assertEquals(new BigDecimal("0.03"), decimal.evaluate(coupon, FixedPointCart.of(cart)));
+        assertParity(coupon, cart);
+    }
+
+    @Test
+    void overflowFallsBackToBigDecimal() {
+        CartDto cart = new CartDto();
+        CartDto.CartItemDto item = new CartDto.CartItemDto();
+        item.setProduct_id(1L);
+        item.setQuantity(1000);
+        item.setPrice(new BigDecimal("90000000000.00"));
+        cart.setItems(List.of(item));
+        CouponDtos.Details d = new CouponDtos.Details();
+        d.setThreshold(BigDecimal.ONE);
+        // The cart total fits a long; total * discount does not.
+        d.setDiscount(new BigDecimal("12.345678"));
+        CompiledCoupon coupon = CompiledCoupon.of(1L, CouponType.CART_WISE, null, null, d);
+        FixedPointCart fixed = FixedPointCart.of(cart);
+        assertNotNull(fixed);
+        assertEquals(decimal.evaluate(coupon, CompiledCart.of(cart)), decimal.evaluate(coupon, fixed));
+    }
+
+    @Test
+    void discountsWithoutAFixedPointRateFallBackToBigDecimal() {
+        CartDto cart = new CartDto();
+        CartDto.CartItemDto item = new CartDto.CartItemDto();
+        item.setProduct_id(1L);
+        item.setQuantity(3);
+        item.setPrice(new BigDecimal("19.99"));
+        cart.setItems(List.of(item));
+        // Scale 19, then precision 19: neither fits a long with a scale of at most 18.
+        for (String discount : List.of("10.0000000000000000001", "1234567890.123456789")) {
+            CouponDtos.Details cartWise = new CouponDtos.Details();
+            cartWise.setThreshold(BigDecimal.ONE);
+            cartWise.setDiscount(new BigDecimal(discount));
+            CouponDtos.Details productWise = new CouponDtos.Details();
+            productWise.setProduct_id(1L);
+            productWise.setDiscount(new BigDecimal(discount));
+            for (CompiledCoupon coupon : List.of(CompiledCoupon.of(1L, CouponType.CART_WISE, null, null, cartWise),
+                    CompiledCoupon.of(2L, CouponType.PRODUCT_WISE, null, null, productWise))) {
+                assertNull(coupon.fixedPointRate());
+                assertEquals(1, decimal.evaluate(coupon, FixedPointCart.of(cart)).signum(), () -> "coupon " + coupon);
+                assertParity(coupon, cart);
+            }
+        }
+    }
+}
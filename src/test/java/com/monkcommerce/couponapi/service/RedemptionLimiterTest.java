@@ -0,0 +1,200 @@
+package com.monkcommerce.couponapi.service;
+
+import com.monkcommerce.couponapi.catalog.CompiledCoupon;
+import com.monkcommerce.couponapi.dto.CouponDtos;
+import com.monkcommerce.couponapi.entity.Redemption;
+import com.monkcommerce.couponapi.entity.RedemptionQuota;
+import com.monkcommerce.couponapi.model.CouponType;
+import com.monkcommerce.couponapi.repository.RedemptionQuotaRepository;
+import com.monkcommerce.couponapi.repository.RedemptionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedemptionLimiterTest {
+
+    // Shared by every limiter in a test, as the database is shared by every node.
+    private final List<Redemption> saved = new CopyOnWriteArrayList<>();
+    private final Map<RedemptionQuota.Key, Long> quotas = new ConcurrentHashMap<>();
+    private final List<RedemptionLimiter> nodes = new CopyOnWriteArrayList<>();
+    private final RedemptionLimiter limiter = node(5);
+
+    private RedemptionLimiter node(long flushIntervalMillis) {
+        RedemptionLimiter node = new RedemptionLimiter(repository(), quotaRepository(), TransactionOperations.withoutTransaction(),
+                Clock.systemUTC(), 8, flushIntervalMillis, 16, 60_000);
+        nodes.add(node);
+        return node;
+    }
+
+    @AfterEach
+    void stop() {
+        nodes.forEach(RedemptionLimiter::shutdown);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedemptionRepository repository() {
+        return (RedemptionRepository) Proxy.newProxyInstance(
+                RedemptionRepository.class.getClassLoader(), new Class<?>[]{RedemptionRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "countByCouponId" -> saved.stream().filter(r -> r.getCouponId().equals(args[0])).count();
+                    case "countByCouponIdAndUserId" -> saved.stream()
+                            .filter(r -> r.getCouponId().equals(args[0]) && args[1].equals(r.getUserId())).count();
+                    case "saveAll" -> {
+                        saved.addAll((Collection<Redemption>) args[0]);
+                        yield args[0];
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    // Each method is atomic on the map, as each statement is on its row.
+    private RedemptionQuotaRepository quotaRepository() {
+        return (RedemptionQuotaRepository) Proxy.newProxyInstance(
+                RedemptionQuotaRepository.class.getClassLoader(), new Class<?>[]{RedemptionQuotaRepository.class},
+                (proxy, method, args) -> {
+                    RedemptionQuota.Key key = new RedemptionQuota.Key((Long) args[0], (String) args[1]);
+                    return switch (method.getName()) {
+                        case "findClaimed" -> Optional.ofNullable(quotas.get(key));
+                        case "insert" -> {
+                            if (quotas.putIfAbsent(key, (Long) args[2]) != null) throw new DataIntegrityViolationException("duplicate");
+                            yield null;
+                        }
+                        case "claim" -> {
+                            long units = (Long) args[2];
+                            long limit = (Long) args[3];
+                            boolean[] claimed = new boolean[1];
+                            quotas.computeIfPresent(key, (k, v) -> {
+                                claimed[0] = v + units <= limit;
+                                return claimed[0] ? v + units : v;
+                            });
+                            yield claimed[0] ? 1 : 0;
+                        }
+                        case "giveBack" -> quotas.computeIfPresent(key, (k, v) -> v - (Long) args[2]) != null ? 1 : 0;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    };
+                });
+    }
+
+    private static CompiledCoupon limited(Integer total, Integer perUser) {
+        CouponDtos.Details d = new CouponDtos.Details();
+        d.setThreshold(BigDecimal.ZERO);
+        d.setDiscount(BigDecimal.TEN);
+        d.setMax_redemptions(total);
+        d.setMax_redemptions_per_user(perUser);
+        return CompiledCoupon.of(1L, CouponType.CART_WISE, null, null, d);
+    }
+
+    @Test
+    void concurrentRedemptionsOnTwoNodesNeverExceedTheLimits() throws Exception {
+        List<RedemptionLimiter> limiters = List.of(limiter, node(5));
+        int limit = 500;
+        int perUser = 3;
+        CompiledCoupon coupon = limited(limit, perUser);
+        int threads = 32;
+        int attemptsPerThread = 200;
+        AtomicInteger committed = new AtomicInteger();
+        Map<String, AtomicInteger> perUserCommitted = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try { start.await(); } catch (InterruptedException e) { return; }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    String user = "u" + random.nextInt(400);
+                    RedemptionLimiter.Reservation reservation;
+                    try {
+                        reservation = limiters.get(random.nextInt(limiters.size())).reserve(coupon, user);
+                    } catch (IllegalArgumentException limitReached) {
+                        continue;
+                    }
+                    // Some redemptions turn out not to apply and give their slot back.
+                    if (random.nextInt(4) == 0) {
+                        reservation.release();
+                    } else {
+                        reservation.commit(BigDecimal.ONE);
+                        committed.incrementAndGet();
+                        perUserCommitted.computeIfAbsent(user, u -> new AtomicInteger()).incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+        // 6400 attempts against 400 users * 3 leaves demand well above the global limit.
+        assertEquals(limit, committed.get());
+        assertTrue(perUserCommitted.values().stream().allMatch(c -> c.get() <= perUser));
+        assertThrows(IllegalArgumentException.class, () -> limiter.reserve(coupon, "someone-new"));
+
+        limiters.forEach(RedemptionLimiter::flush);
+        assertEquals(limit, saved.size());
+        Map<String, Long> persistedPerUser = saved.stream().collect(Collectors.groupingBy(Redemption::getUserId, Collectors.counting()));
+        assertTrue(persistedPerUser.values().stream().allMatch(c -> c <= perUser));
+    }
+
+    @Test
+    void limitChangesApplyToTheLiveCounter() {
+        for (int i = 0; i < 5; i++) limiter.reserve(limited(5, null), null).commit(BigDecimal.ONE);
+        assertThrows(IllegalArgumentException.class, () -> limiter.reserve(limited(5, null), null));
+
+        // Raised: exactly the new headroom is granted.
+        RedemptionLimiter.Reservation sixth = limiter.reserve(limited(7, null), null);
+        limiter.reserve(limited(7, null), null).commit(BigDecimal.ONE);
+        assertThrows(IllegalArgumentException.class, () -> limiter.reserve(limited(7, null), null));
+
+        // Lowered below what is held: releases pay off the deficit instead of freeing slots.
+        sixth.release();
+        assertThrows(IllegalArgumentException.class, () -> limiter.reserve(limited(4, null), null));
+        assertThrows(IllegalArgumentException.class, () -> limiter.reserve(limited(6, null), null));
+        limiter.reserve(limited(7, null), null).commit(BigDecimal.ONE);
+
+        assertThrows(IllegalArgumentException.class, () -> limiter.reserve(limited(null, 1), null));
+    }
+
+    @Test
+    void unusedLeasesGoBackToOtherNodes() {
+        RedemptionLimiter other = node(5);
+        // Each lease takes an eighth of what is left: 8 of 64, then 7 of 56.
+        limiter.reserve(limited(64, null), null).commit(BigDecimal.ONE);
+        other.reserve(limited(64, null), null).commit(BigDecimal.ONE);
+        assertEquals(15L, quotas.get(new RedemptionQuota.Key(1L, RedemptionQuota.ALL_USERS)));
+
+        limiter.shutdown();
+        assertEquals(8L, quotas.get(new RedemptionQuota.Key(1L, RedemptionQuota.ALL_USERS)));
+        for (int i = 0; i < 62; i++) other.reserve(limited(64, null), null).commit(BigDecimal.ONE);
+        assertThrows(IllegalArgumentException.class, () -> other.reserve(limited(64, null), null));
+    }
+
+    @Test
+    void aNewLimitCountsRedemptionsStillQueued() {
+        RedemptionLimiter slow = node(60_000);
+        for (int i = 0; i < 3; i++) slow.reserve(limited(null, 5), "u1").commit(BigDecimal.ONE);
+        assertTrue(saved.isEmpty());
+
+        assertThrows(IllegalArgumentException.class, () -> slow.reserve(limited(3, 5), "u2"));
+        slow.reserve(limited(4, 5), "u2").commit(BigDecimal.ONE);
+        assertThrows(IllegalArgumentException.class, () -> slow.reserve(limited(4, 5), "u3"));
+    }
+}